@@ -1,17 +1,24 @@
 package searchengine.config;
 
 import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.IOException;
 
+// one instance of every morphology for the whole application, their dictionaries are large
 @Configuration
 public class LemmaConfiguration {
 
     @Bean
-    public LuceneMorphology luceneMorphology() throws IOException {
+    public LuceneMorphology russianMorphology() throws IOException {
         return new RussianLuceneMorphology();
     }
+
+    @Bean
+    public LuceneMorphology englishMorphology() throws IOException {
+        return new EnglishLuceneMorphology();
+    }
 }
@@ -8,4 +8,9 @@ import lombok.Setter;
 public class Site {
     private String url;
     private String name;
+    // delay between requests to the site in milliseconds, overrides the common one
+    private Long crawlDelay;
+    // limits of the crawl, override the common ones
+    private Integer maxDepth;
+    private Integer maxPages;
 }
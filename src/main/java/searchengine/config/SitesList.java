@@ -13,4 +13,53 @@ import java.util.List;
 @ConfigurationProperties(prefix = "indexing-settings")
 public class SitesList {
     private List<Site> sites;
+
+    // delay between requests to the same site in milliseconds
+    private long crawlDelay = 500;
+
+    // crawl pipeline: requests in flight and database writer threads for all sites together,
+    // capacity of the queues between stages, pages per database transaction
+    // and how long (in milliseconds) a writer waits to fill the batch.
+    // Every writer holds one pooled connection, spring.datasource.hikari.maximum-pool-size should cover
+    // the writers, the reindex threads, the lemma flusher and the web requests
+    private int fetchConcurrency = 16;
+    private int dbWriters = 2;
+    private int queueCapacity = 100;
+    private int persistBatchSize = 50;
+    private long persistFlushMillis = 200;
+
+    // links deeper than max-depth from the home page are not followed, not more than max-pages urls of a site
+    // are crawled in one run. 0 - no limit
+    private int maxDepth;
+    private int maxPages;
+
+    // how many urls of each site are taken from its sitemaps before crawling
+    private int sitemapMaxUrls = 100_000;
+
+    // pages whose text SimHash differs in this number of bits or less are indexed once. -1 - no detection
+    private int nearDuplicateDistance = 3;
+
+    // how often (in milliseconds) the summed up lemma frequencies are written to the database
+    private long lemmaFlushMillis = 1000;
+
+    // how many word forms with their normal forms are kept in memory
+    private int wordFormCacheSize = 100_000;
+
+    // memory (in megabytes) for the responses of recent searches
+    private int searchCacheMegabytes = 16;
+
+    // how often (in milliseconds) at most the pages committed by crawls of current sites invalidate the cached responses
+    private long searchCacheRefreshMillis = 5000;
+
+    // threads and waiting requests for /api/indexPage, requests over the capacity are refused
+    private int reindexThreads = 4;
+    private int reindexQueueCapacity = 1000;
+
+    // where and how often (in seconds) the crawl frontiers are saved for resuming
+    private String checkpointDir = "checkpoints";
+    private long checkpointInterval = 60;
+
+    // how many urls per site are stored exactly, the rest go to a Bloom filter. 0 - no limit
+    private int seenUrlsExactLimit;
+    private int seenUrlsBloomCapacity = 1_000_000;
 }
@@ -40,7 +40,8 @@ public class ApiController {
 
 
     @GetMapping("/startIndexing")
-    public ResponseEntity<MappingJacksonValue> startIndexing() {
+    public ResponseEntity<MappingJacksonValue> startIndexing(
+            @RequestParam(name = "incremental", required = false, defaultValue = "false") boolean incremental) {
         clearIndexingResponse();
 
         // checks is indexation is in progress
@@ -55,7 +56,34 @@ public class ApiController {
         // launch page indexing separately
         executorService.execute(() -> {
             indexingResponse.setResult(true);
-            indexingService.startIndexing();
+            indexingService.startIndexing(incremental);
+            isIndexing = false;
+        });
+
+        MappingJacksonValue jacksonValue = new MappingJacksonValue(indexingResponse);
+        if (indexingResponse.getError() == null) {
+            jacksonValue.setSerializationView(PartialView.class);
+        }
+        return ResponseEntity.ok(jacksonValue);
+    }
+
+
+    // continues the indexing from the checkpoints that were saved when it was stopped or interrupted
+    @GetMapping("/resumeIndexing")
+    public ResponseEntity<MappingJacksonValue> resumeIndexing() {
+        clearIndexingResponse();
+
+        if (isIndexing) {
+            indexingResponse.setError("Индексация уже запущена");
+            MappingJacksonValue jacksonValue = new MappingJacksonValue(indexingResponse);
+            return ResponseEntity.ok(jacksonValue);
+        }
+
+        isIndexing = true;
+
+        executorService.execute(() -> {
+            indexingResponse.setResult(true);
+            indexingService.resumeIndexing();
             isIndexing = false;
         });
 
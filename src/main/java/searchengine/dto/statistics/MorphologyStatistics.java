@@ -0,0 +1,12 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class MorphologyStatistics {
+    private int cacheSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private double hitRate;
+}
@@ -0,0 +1,12 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class PipelineStatistics {
+    private int frontier;
+    private int fetchQueue;
+    private int fetching;
+    private int parseQueue;
+    private int persistQueue;
+}
@@ -0,0 +1,17 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class SearchCacheStatistics {
+    private int entries;
+    private long sizeBytes;
+    private long capacityBytes;
+    private long hits;
+    private long misses;
+    // searches that waited for the same search of another request instead of running it again
+    private long sharedSearches;
+    private long evictions;
+    private long invalidations;
+    private double hitRate;
+}
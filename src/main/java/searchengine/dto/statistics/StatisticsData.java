@@ -8,4 +8,7 @@ import java.util.List;
 public class StatisticsData {
     private TotalStatistics total;
     private List<DetailedStatisticsItem> detailed;
+    private PipelineStatistics pipeline;
+    private MorphologyStatistics morphology;
+    private SearchCacheStatistics searchCache;
 }
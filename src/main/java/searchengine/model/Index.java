@@ -13,8 +13,10 @@ import javax.persistence.*;
 @Entity
 public class Index {
 
+    // ids from a sequence let Hibernate and BulkIndexWriter insert rows in batches
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "index_seq")
+    @SequenceGenerator(name = "index_seq", sequenceName = "index_seq", allocationSize = 50)
     private Integer id;
 
     @ManyToOne
@@ -27,4 +29,8 @@ public class Index {
 
     @Column (columnDefinition = "float", nullable = false)
     private Float rank;
+
+    // positions of the lemma on the page encoded by PositionCodec, rank is their number
+    @Column (columnDefinition = "bytea")
+    private byte[] positions;
 }
@@ -9,11 +9,13 @@ import javax.persistence.*;
 @Setter
 
 @Entity
-@Table
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"site_id", "lemma"}))
 public class Lemma {
 
+    // ids are given by LemmaDictionary from the same sequence
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "lemma_seq")
+    @SequenceGenerator(name = "lemma_seq", sequenceName = "lemma_seq", allocationSize = 50)
     private Integer id;
 
     @ManyToOne
@@ -16,8 +16,10 @@ import java.util.List;
         uniqueConstraints = @UniqueConstraint(columnNames = {"site_id", "path"}))
 public class Page {
 
+    // ids from a sequence let Hibernate and BulkIndexWriter insert rows in batches
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "page_seq")
+    @SequenceGenerator(name = "page_seq", sequenceName = "page_seq", allocationSize = 50)
     private Integer id;
 
     @ManyToOne
@@ -30,8 +32,39 @@ public class Page {
     @Column(nullable = false)
     private Integer code;
 
+    // title and visible text are extracted at indexing, so search results are built without parsing html.
+    // The html itself is compressed into PageContent, an error page has only the error message as its text
+    @Column(columnDefinition = "TEXT")
+    private String title;
+
     @Column(nullable = false, columnDefinition = "TEXT")
-    private String content;
+    private String text;
+
+    // compressed html that BulkIndexWriter saves with the page
+    @Transient
+    private byte[] compressedHtml;
+
+    // validators from the last response and a hash of the page text, for incremental reindexing
+    @Column
+    private String etag;
+
+    @Column(name = "last_modified")
+    private String lastModified;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // SimHash of the page text, and the path of the page with almost the same text if this one is its copy.
+    // Copies are saved without content, lemmas and indexes
+    @Column
+    private Long simhash;
+
+    @Column(name = "canonical_path", columnDefinition = "TEXT")
+    private String canonicalPath;
+
+    // the number of the page's indexed words, the document length for ranking
+    @Column
+    private Integer length;
 
     @OneToMany(mappedBy = "page", cascade = CascadeType.ALL, orphanRemoval = true)
     private List <searchengine.model.Index> indexes;
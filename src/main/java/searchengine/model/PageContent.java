@@ -0,0 +1,23 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+// html of a page compressed with PageContentCodec. It is kept apart from the page, so searches that load pages
+// don't read it, and it is loaded by its page id only when it is needed
+@Getter
+@Setter
+
+@Entity
+@Table(name = "page_content")
+public class PageContent {
+
+    @Id
+    @Column(name = "page_id")
+    private Integer pageId;
+
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] html;
+}
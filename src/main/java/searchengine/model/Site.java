@@ -34,4 +34,10 @@ public class Site {
 
     @Column(nullable = false)
     private String name;
+
+    // several rows of one site exist while a new generation is built. The generation is changed only
+    // by SiteGenerations with sql, so saving an old copy of the entity can't bring a retired row back
+    @Column(length = 16, updatable = false)
+    @Enumerated(EnumType.STRING)
+    private SiteGeneration generation = SiteGeneration.CURRENT;
 }
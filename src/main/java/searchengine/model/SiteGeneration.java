@@ -0,0 +1,9 @@
+package searchengine.model;
+
+// a full indexing builds a new generation of the site, the current one is searched until the new one is finished.
+// Retired generations are deleted in the background
+public enum SiteGeneration {
+    BUILDING,
+    CURRENT,
+    RETIRED
+}
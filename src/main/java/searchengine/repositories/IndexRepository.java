@@ -1,6 +1,7 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import searchengine.model.Index;
@@ -15,13 +16,52 @@ public interface IndexRepository extends JpaRepository <Index, Integer> {
 
     long countPagesByLemma (Lemma lemma);
 
+    long countPagesByLemmaIn(List<Lemma> lemmas);
+
     @Query("SELECT DISTINCT i.page FROM Index i WHERE i.lemma = :lemma")
     List<Page> findDistinctPagesByLemma(Lemma lemma);
 
     @Query("SELECT DISTINCT i.page FROM Index i WHERE i.lemma = :lemma AND i.page IN :pages")
     Optional<List<Page>> findDistinctPageByLemmaAndPageIn(@Param("lemma") Lemma lemma, @Param("pages") List<Page> pages);
 
+    @Query("SELECT DISTINCT i.page FROM Index i WHERE i.lemma IN :lemmas")
+    List<Page> findDistinctPagesByLemmaIn(@Param("lemmas") List<Lemma> lemmas);
+
+    @Query("SELECT DISTINCT i.page FROM Index i WHERE i.lemma IN :lemmas AND i.page IN :pages")
+    Optional<List<Page>> findDistinctPageByLemmaInAndPageIn(@Param("lemmas") List<Lemma> lemmas, @Param("pages") List<Page> pages);
+
 
     @Query("SELECT COUNT(i) FROM Index i WHERE i.page = :page AND i.lemma IN :lemmas")
     long countOccurrencesOnPage(@Param("page") Page page, @Param("lemmas") List<Lemma> lemmas);
+
+    // the page's occurrences of every lemma, to take them away from the lemma frequencies
+    @Query("SELECT i.lemma.id AS lemmaId, i.rank AS rank FROM Index i WHERE i.page.id = :pageId")
+    List<LemmaRank> findLemmaRanksByPageId(@Param("pageId") Integer pageId);
+
+    // the page's index rows, to compare them with a new version of the page
+    @Query("SELECT i.id AS id, i.lemma.id AS lemmaId, i.rank AS rank, i.positions AS positions FROM Index i WHERE i.page.id = :pageId")
+    List<Posting> findPostingsByPageId(@Param("pageId") Integer pageId);
+
+    @Query("SELECT i.positions FROM Index i WHERE i.page.id = :pageId AND i.lemma.id = :lemmaId")
+    byte[] findPositions(@Param("pageId") Integer pageId, @Param("lemmaId") Integer lemmaId);
+
+    @Modifying
+    @Query("DELETE FROM Index i WHERE i.page.id = :pageId")
+    void deleteByPageId(@Param("pageId") Integer pageId);
+
+    interface LemmaRank {
+        Integer getLemmaId();
+
+        Float getRank();
+    }
+
+    interface Posting {
+        Integer getId();
+
+        Integer getLemmaId();
+
+        Float getRank();
+
+        byte[] getPositions();
+    }
 }
@@ -0,0 +1,14 @@
+package searchengine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import searchengine.model.PageContent;
+
+public interface PageContentRepository extends JpaRepository<PageContent, Integer> {
+
+    @Modifying
+    @Query("DELETE FROM PageContent c WHERE c.pageId = :pageId")
+    void deleteByPageId(@Param("pageId") Integer pageId);
+}
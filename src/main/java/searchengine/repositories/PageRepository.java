@@ -1,8 +1,15 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import searchengine.model.Page;
 import searchengine.model.Site;
+import searchengine.model.SiteGeneration;
+
+import java.util.List;
+import java.util.Optional;
 
 
 public interface PageRepository extends JpaRepository <Page, Integer> {
@@ -15,4 +22,35 @@ public interface PageRepository extends JpaRepository <Page, Integer> {
 
     long count();
 
+    long countBySiteGeneration(SiteGeneration generation);
+
+    List<PageState> findPageStatesBySite(Site site);
+
+    Optional<PageState> findPageStateBySiteAndPath(Site site, String path);
+
+    @Modifying
+    @Query("DELETE FROM Page p WHERE p.id = :id")
+    void deletePageById(@Param("id") Integer id);
+
+    @Modifying
+    @Query("UPDATE Page p SET p.etag = :etag, p.lastModified = :lastModified WHERE p.id = :id")
+    void updateValidators(@Param("id") Integer id, @Param("etag") String etag, @Param("lastModified") String lastModified);
+
+    // what we need to know about an already indexed page for incremental reindexing
+    interface PageState {
+        Integer getId();
+
+        String getPath();
+
+        String getEtag();
+
+        String getLastModified();
+
+        String getContentHash();
+
+        Long getSimhash();
+
+        String getCanonicalPath();
+    }
+
 }
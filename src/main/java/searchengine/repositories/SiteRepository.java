@@ -2,11 +2,21 @@ package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import searchengine.model.Site;
+import searchengine.model.SiteGeneration;
 
+import java.util.List;
 import java.util.Optional;
 
 
 public interface SiteRepository extends JpaRepository<Site, Integer> {
 
-    Optional <Site> findByUrl(String url);
+    // the searched row of the site
+    Optional <Site> findByUrlAndGeneration(String url, SiteGeneration generation);
+
+    // the newest row that is not retired: the generation being built if there is one
+    Optional <Site> findFirstByUrlAndGenerationNotOrderByIdDesc(String url, SiteGeneration generation);
+
+    List<Site> findAllByGenerationNotOrderById(SiteGeneration generation);
+
+    List<Site> findAllByGeneration(SiteGeneration generation);
 }
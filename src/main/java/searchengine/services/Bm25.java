@@ -0,0 +1,36 @@
+package searchengine.services;
+
+// Okapi BM25 relevance of a page for a query lemma, from the numbers that the index already keeps:
+// the lemma's frequency on the page, the number of the page's words, the average number of words
+// of the searched pages, and the number of pages with the lemma
+public final class Bm25 {
+
+    // how fast the weight of a repeated lemma stops growing
+    private static final double K1 = 1.2;
+    // how much a long page is penalized for its length
+    private static final double B = 0.75;
+
+    private Bm25() {
+    }
+
+    // rare lemmas weigh more, the value is never negative
+    public static double idf(int pages, int documentFrequency) {
+        return Math.max(0, Math.log(1 + (pages - documentFrequency + 0.5) / (documentFrequency + 0.5)));
+    }
+
+    // no page with the lemma gets more: the score grows with the frequency and falls with the length of the page
+    public static double upperBound(int maxFrequency, double idf) {
+        if (maxFrequency == 0) {
+            return 0;
+        }
+        return idf * maxFrequency * (K1 + 1) / (maxFrequency + K1 * (1 - B));
+    }
+
+    public static double score(int frequency, int length, double averageLength, double idf) {
+        if (frequency == 0) {
+            return 0;
+        }
+        double norm = averageLength > 0 ? 1 - B + B * length / averageLength : 1;
+        return idf * frequency * (K1 + 1) / (frequency + K1 * norm);
+    }
+}
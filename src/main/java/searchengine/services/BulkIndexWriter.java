@@ -0,0 +1,164 @@
+package searchengine.services;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.model.Index;
+import searchengine.model.Page;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+// writes pages and indexes with batched JDBC statements: saveAll() of JPA makes a round-trip for every row.
+// Ids are taken from the same sequences as Hibernate uses, so rows written here and by the repositories never get the same id
+@Component
+public class BulkIndexWriter {
+
+    // rows per JDBC batch, indexes of a batch of pages are sent in a few round-trips
+    private static final int INDEX_BATCH_SIZE = 1000;
+
+    private static final String INSERT_PAGE = "INSERT INTO page (id, site_id, path, code, title, text, etag, last_modified, " +
+            "content_hash, simhash, canonical_path, length) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (site_id, path) DO NOTHING";
+    private static final String INSERT_CONTENT = "INSERT INTO page_content (page_id, html) VALUES (?, ?)";
+    private static final String UPDATE_PAGE = "UPDATE page SET code = ?, title = ?, text = ?, etag = ?, last_modified = ?, " +
+            "content_hash = ?, simhash = ?, canonical_path = ?, length = ? WHERE id = ?";
+    private static final String UPSERT_CONTENT = "INSERT INTO page_content (page_id, html) VALUES (?, ?) " +
+            "ON CONFLICT (page_id) DO UPDATE SET html = EXCLUDED.html";
+    private static final String DELETE_CONTENT = "DELETE FROM page_content WHERE page_id = ?";
+    private static final String UPDATE_INDEX = "UPDATE index SET rank = ?, positions = ? WHERE id = ?";
+    private static final String DELETE_INDEX = "DELETE FROM index WHERE id = ?";
+    private static final String INSERT_INDEX = "INSERT INTO index (id, page_id, lemma_id, rank, positions) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SequenceIds pageIds;
+    private final SequenceIds indexIds;
+
+    public BulkIndexWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.pageIds = new SequenceIds(jdbcTemplate, "page_seq");
+        this.indexIds = new SequenceIds(jdbcTemplate, "index_seq");
+    }
+
+    // inserts the pages that are not in the database yet with their compressed html and returns them with their ids.
+    // Pages with a path that is already saved for the site are skipped
+    public List<Page> insertPages(List<Page> pages) {
+        if (pages.isEmpty()) {
+            return pages;
+        }
+        long[] ids = pageIds.allocate(pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            pages.get(i).setId((int) ids[i]);
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_PAGE, pages, pages.size(), (statement, page) -> {
+            statement.setInt(1, page.getId());
+            statement.setInt(2, page.getSite().getId());
+            statement.setString(3, page.getPath());
+            statement.setInt(4, page.getCode());
+            statement.setString(5, page.getTitle());
+            statement.setString(6, page.getText());
+            statement.setString(7, page.getEtag());
+            statement.setString(8, page.getLastModified());
+            statement.setString(9, page.getContentHash());
+            if (page.getSimhash() != null) {
+                statement.setLong(10, page.getSimhash());
+            } else {
+                statement.setNull(10, Types.BIGINT);
+            }
+            statement.setString(11, page.getCanonicalPath());
+            setLength(statement, 12, page);
+        });
+
+        List<Page> insertedPages = new ArrayList<>();
+        List<Page> contents = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            if (counts[0][i] != 0) {
+                insertedPages.add(page);
+                if (page.getCompressedHtml() != null) {
+                    contents.add(page);
+                }
+            } else {
+                page.setId(null);
+            }
+        }
+        if (!contents.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_CONTENT, contents, contents.size(), (statement, page) -> {
+                statement.setInt(1, page.getId());
+                statement.setBytes(2, page.getCompressedHtml());
+            });
+        }
+        return insertedPages;
+    }
+
+    // a new version of a saved page: the page keeps its id, so its unchanged index rows stay as they are
+    public void updatePage(Page page) {
+        jdbcTemplate.update(UPDATE_PAGE, statement -> {
+            statement.setInt(1, page.getCode());
+            statement.setString(2, page.getTitle());
+            statement.setString(3, page.getText());
+            statement.setString(4, page.getEtag());
+            statement.setString(5, page.getLastModified());
+            statement.setString(6, page.getContentHash());
+            if (page.getSimhash() != null) {
+                statement.setLong(7, page.getSimhash());
+            } else {
+                statement.setNull(7, Types.BIGINT);
+            }
+            statement.setString(8, page.getCanonicalPath());
+            setLength(statement, 9, page);
+            statement.setInt(10, page.getId());
+        });
+        if (page.getCompressedHtml() != null) {
+            jdbcTemplate.update(UPSERT_CONTENT, page.getId(), page.getCompressedHtml());
+        } else {
+            jdbcTemplate.update(DELETE_CONTENT, page.getId());
+        }
+    }
+
+    // rank and positions of the rows with these ids are replaced
+    public void updateIndexes(List<Index> indexes) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_INDEX, indexes, INDEX_BATCH_SIZE, (statement, index) -> {
+            statement.setFloat(1, index.getRank());
+            statement.setBytes(2, index.getPositions());
+            statement.setInt(3, index.getId());
+        });
+    }
+
+    public void deleteIndexes(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(DELETE_INDEX, ids, INDEX_BATCH_SIZE, (statement, id) -> statement.setInt(1, id));
+    }
+
+    // page and lemma of every index need only their ids
+    public void insertIndexes(List<Index> indexes) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        long[] ids = indexIds.allocate(indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            indexes.get(i).setId((int) ids[i]);
+        }
+        jdbcTemplate.batchUpdate(INSERT_INDEX, indexes, INDEX_BATCH_SIZE, (statement, index) -> {
+            statement.setInt(1, index.getId());
+            statement.setInt(2, index.getPage().getId());
+            statement.setInt(3, index.getLemma().getId());
+            statement.setFloat(4, index.getRank());
+            statement.setBytes(5, index.getPositions());
+        });
+    }
+
+    private static void setLength(PreparedStatement statement, int parameter, Page page) throws SQLException {
+        if (page.getLength() != null) {
+            statement.setInt(parameter, page.getLength());
+        } else {
+            statement.setNull(parameter, Types.INTEGER);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SitesList;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// keeps the frontier of every crawled site in a local file, one url and its depth per line (the first line is the site url).
+// Pages that are already saved are in the database, so the frontier is enough to resume the crawl
+@Component
+public class CrawlCheckpointStore {
+
+    private final Path directory;
+    private final long intervalSeconds;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "crawl-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CrawlCheckpointStore(SitesList settings) {
+        this.directory = Paths.get(settings.getCheckpointDir());
+        this.intervalSeconds = settings.getCheckpointInterval();
+    }
+
+    // saves checkpoints of the crawls regularly until the returned future is cancelled
+    public ScheduledFuture<?> startCheckpointing(Collection<SiteCrawlContext> crawls) {
+        return executor.scheduleWithFixedDelay(() -> crawls.forEach(context -> {
+            if (!context.isFinished()) {
+                save(context);
+            }
+        }), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // the file is written next to the old one and then moved, so a crash can't leave a half-written checkpoint
+    public synchronized void save(SiteCrawlContext context) {
+        List<String> lines = new ArrayList<>();
+        lines.add(context.getSite().getUrl());
+        context.getFrontier().forEach((url, depth) -> lines.add(url + "\t" + depth));
+        try {
+            Files.createDirectories(directory);
+            Path file = getFile(context.getSite().getUrl());
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tempFile, lines, StandardCharsets.UTF_8);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Не удалось сохранить состояние обхода сайта " + context.getSite().getUrl() + ": " + e.getMessage());
+        }
+    }
+
+    // urls of the frontier with their depth, or null if there is no checkpoint for the site
+    public Map<String, Integer> load(String siteUrl) {
+        Path file = getFile(siteUrl);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(siteUrl)) {
+                return null;
+            }
+            Map<String, Integer> frontier = new LinkedHashMap<>();
+            for (String line : lines.subList(1, lines.size())) {
+                int tab = line.lastIndexOf('\t');
+                if (tab < 0) {
+                    frontier.put(line, 1);
+                } else {
+                    frontier.put(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+                }
+            }
+            return frontier;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public void delete(String siteUrl) {
+        try {
+            Files.deleteIfExists(getFile(siteUrl));
+        } catch (IOException ignored) {
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Path getFile(String siteUrl) {
+        String name = siteUrl.replaceAll("^https?://", "").replaceAll("[^a-zA-Z0-9.-]", "_");
+        return directory.resolve(name + ".checkpoint");
+    }
+}
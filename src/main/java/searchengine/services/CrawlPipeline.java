@@ -0,0 +1,425 @@
+package searchengine.services;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SitesList;
+import searchengine.dto.statistics.PipelineStatistics;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.repositories.PageRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// crawling is split into stages connected with bounded queues:
+// fetch (asynchronous http requests) -> parse and lemmatize (one thread per CPU core) -> persist (batches in one transaction).
+// When a queue is full the previous stage waits, so a slow database slows down fetching instead of filling the memory.
+// All sites are crawled at the same time, each of them gets an equal share of the fetch budget
+@Component
+public class CrawlPipeline {
+
+    public static final String USER_AGENT = "Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6";
+    private static final Duration FETCH_TIMEOUT = Duration.ofMillis(1500);
+
+    private final PageIndexer pageIndexer;
+    private final LemmaService lemmaService;
+    private final PolitenessScheduler scheduler;
+    private final TransactionTemplate transactionTemplate;
+    private final int fetchConcurrency;
+    private final int dbWriters;
+    private final int persistBatchSize;
+    private final long persistFlushMillis;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(FETCH_TIMEOUT)
+            .build();
+    private final Semaphore fetchPermits;
+    private final BlockingQueue<CrawlTask> fetchQueue;
+    private final BlockingQueue<CrawlTask> parseQueue;
+    private final BlockingQueue<CrawlTask> persistQueue;
+    private final Set<SiteCrawlContext> activeSites = ConcurrentHashMap.newKeySet();
+    private final List<Thread> stageThreads = new ArrayList<>();
+
+    public CrawlPipeline(PageIndexer pageIndexer,
+                         LemmaService lemmaService,
+                         PolitenessScheduler scheduler,
+                         PlatformTransactionManager transactionManager,
+                         SitesList settings) {
+        this.pageIndexer = pageIndexer;
+        this.lemmaService = lemmaService;
+        this.scheduler = scheduler;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.fetchConcurrency = settings.getFetchConcurrency();
+        this.dbWriters = settings.getDbWriters();
+        this.persistBatchSize = settings.getPersistBatchSize();
+        this.persistFlushMillis = settings.getPersistFlushMillis();
+        this.fetchPermits = new Semaphore(fetchConcurrency);
+        this.fetchQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        this.parseQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        this.persistQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        startStage("crawl-fetch", 1, this::runFetchStage);
+        startStage("crawl-parse", Runtime.getRuntime().availableProcessors(), this::runParseStage);
+        startStage("crawl-persist", dbWriters, this::runPersistStage);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stageThreads.forEach(Thread::interrupt);
+    }
+
+    // the site's tasks are released by the scheduler only while the site uses less than its share of the fetch budget.
+    // The gate belongs to this crawl, a reindex of a page of the same site has its own one
+    public void register(SiteCrawlContext context) {
+        activeSites.add(context);
+        scheduler.setGate(context.getHost(), context, () -> context.getInFlight().get() < getFetchShare());
+        context.getCompletion().whenComplete((result, throwable) -> {
+            activeSites.remove(context);
+            scheduler.cancel(context.getHost(), context);
+        });
+    }
+
+    // called by the politeness scheduler when the host may be requested again. It runs on the scheduler's only thread,
+    // so it doesn't wait for a full fetch queue: false gives the task back to the scheduler to be retried later
+    public boolean fetch(CrawlTask task) {
+        task.getContext().getInFlight().incrementAndGet();
+        if (fetchQueue.offer(task)) {
+            return true;
+        }
+        task.getContext().getInFlight().decrementAndGet();
+        return false;
+    }
+
+    // queue depths show which stage is the bottleneck
+    public PipelineStatistics getStatistics() {
+        PipelineStatistics statistics = new PipelineStatistics();
+        statistics.setFrontier(scheduler.getQueueSize());
+        statistics.setFetchQueue(fetchQueue.size());
+        statistics.setFetching(fetchConcurrency - fetchPermits.availablePermits());
+        statistics.setParseQueue(parseQueue.size());
+        statistics.setPersistQueue(persistQueue.size());
+        return statistics;
+    }
+
+
+    private void runFetchStage() throws InterruptedException {
+        while (true) {
+            CrawlTask task = fetchQueue.take();
+            SiteCrawlContext context = task.getContext();
+            if (context.isStopped()) {
+                context.getInFlight().decrementAndGet();
+                context.taskFinished(task);
+                continue;
+            }
+
+            HttpRequest request;
+            try {
+                HttpRequest.Builder builder = HttpRequest.newBuilder(toUri(task.getUrl()))
+                        .header("User-Agent", USER_AGENT)
+                        .header("Referer", "http://www.google.com")
+                        .timeout(FETCH_TIMEOUT)
+                        .GET();
+                addConditionalHeaders(builder, task.getKnownPage());
+                request = builder.build();
+            } catch (Exception e) {
+                context.getInFlight().decrementAndGet();
+                task.setError(e.getMessage());
+                persistQueue.put(task);
+                continue;
+            }
+
+            // the permit is returned only when the result is in the next queue
+            fetchPermits.acquire();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, throwable) -> {
+                        try {
+                            handleResponse(task, response, throwable);
+                            if (task.getError() == null && !task.isUnchanged()) {
+                                parseQueue.put(task);
+                            } else {
+                                persistQueue.put(task);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            context.taskFinished(task);
+                        } finally {
+                            context.getInFlight().decrementAndGet();
+                            fetchPermits.release();
+                        }
+                    });
+        }
+    }
+
+    private void handleResponse(CrawlTask task, HttpResponse<byte[]> response, Throwable throwable) {
+        if (throwable != null) {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            task.setStatusCode(cause instanceof HttpTimeoutException ? 504 : 0);
+            task.setError(cause.getMessage() != null ? cause.getMessage() : cause.toString());
+            return;
+        }
+
+        task.setStatusCode(response.statusCode());
+        task.setEtag(response.headers().firstValue("ETag").orElse(null));
+        task.setLastModified(response.headers().firstValue("Last-Modified").orElse(null));
+        if (response.statusCode() == 304) {
+            task.setUnchanged(true);
+            return;
+        }
+        if (response.statusCode() >= 400) {
+            task.setError("HTTP error fetching URL");
+            return;
+        }
+        String contentType = response.headers().firstValue("Content-Type").orElse("text/html");
+        if (!contentType.startsWith("text/") && !contentType.contains("xml")) {
+            task.setStatusCode(0);
+            task.setError("Unhandled content type: " + contentType);
+            return;
+        }
+        task.setCharset(getCharset(contentType));
+        task.setBody(response.body());
+    }
+
+
+    private void runParseStage() throws InterruptedException {
+        while (true) {
+            CrawlTask task = parseQueue.take();
+            SiteCrawlContext context = task.getContext();
+            if (context.isStopped()) {
+                context.taskFinished(task);
+                continue;
+            }
+
+            Site site = context.getSite();
+            try {
+                Document doc = Jsoup.parse(new ByteArrayInputStream(task.getBody()), task.getCharset(), task.getUrl());
+
+                // links, title and text are collected in one walk over the document
+                PageAnalysis analysis = PageAnalysis.analyze(doc, context.isFollowLinks());
+                for (String link : analysis.getLinks()) {
+                    String url = context.getCanonicalizer().canonicalize(link);
+                    // only the task that claimed the url first will parse it
+                    context.offer(url, task.getDepth() + 1);
+                }
+
+                // the same text as at the previous indexing, nothing to lemmatize
+                String text = analysis.getText();
+                String contentHash = getContentHash(text);
+                PageRepository.PageState knownPage = task.getKnownPage();
+                if (knownPage != null && contentHash.equals(knownPage.getContentHash())) {
+                    task.setUnchanged(true);
+                    persistQueue.put(task);
+                    continue;
+                }
+
+                // a copy of another page of the site is saved as a link to it, without lemmas.
+                // A page becomes an original for later copies only when it is ready to be saved
+                String path = context.getCanonicalizer().toPath(task.getUrl());
+                long simHash = NearDuplicateIndex.simHash(text);
+                String canonicalPath = context.getNearDuplicates().find(path, simHash);
+                HashMap<String, int[]> lemmas = new HashMap<>();
+                Page page = null;
+                if (canonicalPath == null) {
+                    // the html is saved as it was received, in the charset jsoup has found
+                    page = pageIndexer.createPage(path, site, task.getStatusCode(), analysis.getTitle(), analysis.getBodyText(),
+                            new String(task.getBody(), doc.charset()));
+                    lemmas = lemmaService.createLemmaPositions(analysis.getWords());
+                    // another thread may have added the same text meanwhile
+                    canonicalPath = context.getNearDuplicates().findOrAdd(path, simHash);
+                }
+                // a copy keeps only its title, its text and html are the original's
+                if (canonicalPath != null) {
+                    page = pageIndexer.createPage(path, site, task.getStatusCode(), analysis.getTitle(), "", null);
+                    lemmas = new HashMap<>();
+                }
+                page.setEtag(task.getEtag());
+                page.setLastModified(task.getLastModified());
+                page.setContentHash(contentHash);
+                page.setSimhash(simHash);
+                page.setCanonicalPath(canonicalPath);
+                task.setPage(page);
+                task.setLemmas(lemmas);
+            } catch (Exception e) {
+                System.out.println("Ошибка при парсинге страницы " + task.getUrl());
+                task.setError(e.getMessage());
+            } finally {
+                task.setBody(null);
+            }
+            persistQueue.put(task);
+        }
+    }
+
+
+    // collects a batch until it is full or the flush interval has passed and writes it in one transaction
+    private void runPersistStage() throws InterruptedException {
+        ArrayList<CrawlTask> batch = new ArrayList<>();
+        while (true) {
+            batch.add(persistQueue.take());
+            long flushAt = System.currentTimeMillis() + persistFlushMillis;
+            while (batch.size() < persistBatchSize) {
+                persistQueue.drainTo(batch, persistBatchSize - batch.size());
+                long wait = flushAt - System.currentTimeMillis();
+                if (batch.size() >= persistBatchSize || wait <= 0) {
+                    break;
+                }
+                CrawlTask task = persistQueue.poll(wait, TimeUnit.MILLISECONDS);
+                if (task == null) {
+                    break;
+                }
+                batch.add(task);
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> persist(batch));
+            } catch (Exception e) {
+                // one bad page should not lose the whole batch
+                persistOneByOne(batch);
+            } finally {
+                batch.forEach(task -> task.getContext().taskFinished(task));
+                batch.clear();
+            }
+        }
+    }
+
+    private void persistOneByOne(List<CrawlTask> batch) {
+        for (CrawlTask task : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> persist(List.of(task)));
+            } catch (Exception e) {
+                System.out.println("Ошибка при сохранении страницы " + task.getUrl() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void persist(List<CrawlTask> batch) {
+        LinkedHashMap<Page, HashMap<String, int[]>> pages = new LinkedHashMap<>();
+        for (CrawlTask task : batch) {
+            SiteCrawlContext context = task.getContext();
+            PageRepository.PageState knownPage = task.getKnownPage();
+            if (task.isUnchanged()) {
+                // after 304 the stored validators are still valid, after a full response they are replaced
+                if (knownPage != null && task.getStatusCode() != 304) {
+                    pageIndexer.updateValidators(knownPage.getId(), task.getEtag(), task.getLastModified());
+                }
+                continue;
+            }
+
+            // a temporary error: the page from the previous indexing stays in the index
+            if (knownPage != null && task.getError() != null
+                    && task.getStatusCode() != 404 && task.getStatusCode() != 410) {
+                continue;
+            }
+            // the page has changed: only the difference between its versions is written
+            if (knownPage != null && task.getError() == null) {
+                pageIndexer.updatePage(knownPage.getId(), task.getPage(), task.getLemmas());
+                continue;
+            }
+            // the page is not available anymore: its old lemmas and indexes are removed
+            if (knownPage != null) {
+                pageIndexer.removePage(context.getSite(), knownPage.getId());
+            }
+            if (task.getError() != null) {
+                pageIndexer.savePageWithConnectionError(context.getCanonicalizer().toPath(task.getUrl()), context.getSite(), task.getStatusCode(),
+                        task.getError(), context.isStopped());
+            } else {
+                pages.put(task.getPage(), task.getLemmas());
+            }
+        }
+        pageIndexer.indexPages(pages);
+    }
+
+
+    private int getFetchShare() {
+        return Math.max(1, fetchConcurrency / Math.max(1, activeSites.size()));
+    }
+
+    private void startStage(String name, int threads, Stage stage) {
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    stage.run();
+                } catch (InterruptedException ignored) {
+                }
+            }, name + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            stageThreads.add(thread);
+        }
+    }
+
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+
+
+    // for incremental indexing: the server answers 304 if the page is the same as at the previous indexing
+    private static void addConditionalHeaders(HttpRequest.Builder builder, PageRepository.PageState knownPage) {
+        if (knownPage == null) {
+            return;
+        }
+        if (knownPage.getEtag() != null) {
+            builder.header("If-None-Match", knownPage.getEtag());
+        }
+        if (knownPage.getLastModified() != null) {
+            builder.header("If-Modified-Since", knownPage.getLastModified());
+        }
+    }
+
+    private static String getContentHash(String text) throws NoSuchAlgorithmException {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder builder = new StringBuilder();
+        for (byte b : hash) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    // jsoup encoded such urls itself, HttpClient needs them already encoded
+    private static URI toUri(String url) throws Exception {
+        try {
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            URL parsed = new URL(url);
+            return new URI(new URI(parsed.getProtocol(), parsed.getUserInfo(), parsed.getHost(), parsed.getPort(),
+                    parsed.getPath(), parsed.getQuery(), null).toASCIIString());
+        }
+    }
+
+    private static String getCharset(String contentType) {
+        int index = contentType.toLowerCase().indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        String charset = contentType.substring(index + 8).replace("\"", "").trim();
+        int end = charset.indexOf(';');
+        return end < 0 ? charset : charset.substring(0, end).trim();
+    }
+}
@@ -0,0 +1,34 @@
+package searchengine.services;
+
+import lombok.Data;
+import searchengine.model.Page;
+import searchengine.repositories.PageRepository;
+
+import java.util.HashMap;
+
+// one url of the site on its way through the crawl pipeline stages
+@Data
+public class CrawlTask {
+
+    private final SiteCrawlContext context;
+    private final String url;
+    // number of links from the home page (sitemap urls are at depth 1)
+    private final int depth;
+    // the page from the previous indexing, only for incremental indexing
+    private final PageRepository.PageState knownPage;
+
+    // filled by the fetch stage
+    private int statusCode;
+    private byte[] body;
+    private String charset;
+    private String error;
+    private String etag;
+    private String lastModified;
+    // 304 response or the same text as before: lemmas and indexes stay as they are
+    private boolean unchanged;
+
+    // filled by the parse stage
+    private Page page;
+    // lemma -> positions of its words in the text
+    private HashMap<String, int[]> lemmas;
+}
@@ -6,7 +6,11 @@ import searchengine.dto.statistics.IndexingResponse;
 
 public interface IndexingService {
 
-    void startIndexing ();
+    // incremental indexing keeps the database and reindexes only the pages that have changed
+    void startIndexing (boolean incremental);
+
+    // continues the stopped or interrupted indexing from the saved checkpoints
+    void resumeIndexing();
 
     void stopIndexing();
 
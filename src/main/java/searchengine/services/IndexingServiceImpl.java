@@ -2,15 +2,11 @@ package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import searchengine.config.SitesList;
 import searchengine.dto.statistics.IndexingResponse;
-import searchengine.model.Lemma;
-import searchengine.model.Page;
 import searchengine.model.Site;
+import searchengine.model.SiteGeneration;
 import searchengine.model.SiteIndexationStatus;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
 
@@ -18,9 +14,9 @@ import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.*;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ForkJoinPool;
-import java.util.stream.Collectors;
+import java.util.concurrent.ScheduledFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -29,74 +25,177 @@ public class IndexingServiceImpl implements IndexingService {
     private final SitesList sites;
     private final PageRepository pageRepository;
     private final SiteRepository siteRepository;
-    private final LemmaService lemmaService;
-    private final IndexRepository indexRepository;
-    private final LemmaRepository lemmaRepository;
-
-    // HashMap with ForkJoinPool objects are keys (for checking status or stopping)
-    // and SiteParserForkJoin objects - for getting unfinished tasks
-    private HashMap<ForkJoinPool, SiteParserForkJoin> forkjoinMap = new HashMap<>();
+    private final PolitenessScheduler politenessScheduler;
+    private final CrawlPipeline crawlPipeline;
+    private final CrawlCheckpointStore checkpointStore;
+    private final PageIndexer pageIndexer;
+    private final LemmaDictionary lemmaDictionary;
+    private final SitemapSeeder sitemapSeeder;
+    private final PageReindexer pageReindexer;
+    private final SiteGenerations siteGenerations;
+
+    // crawls of the current indexing (for checking status or stopping and getting unfinished tasks)
+    private final List<SiteCrawlContext> crawls = new CopyOnWriteArrayList<>();
+    // a boolean value indicating that we are stopping indexing
+    private volatile boolean stopRequested;
+
+
+    // a full indexing builds new generations of the sites, the current ones are searched until they are replaced
+    @Override
+    public void startIndexing(boolean incremental) {
+        crawlSites(incremental, false);
+    }
 
+    @Override
+    public void resumeIndexing() {
+        crawlSites(false, true);
+    }
 
     @Override
-    public void startIndexing() {
-        cleanDBBeforeNewIndexing();
-        SiteParserForkJoin.shutdownForkJoin = false;
+    public void stopIndexing() {
+        stopRequested = true;
+        for (SiteCrawlContext context : crawls) {
+            if (!context.isFinished()) {
+                Site site = context.getSite();
+                site.setLastError("Индексация остановлена пользователем");
+                site.setStatusTime(LocalDateTime.now());
+                site.setStatus(SiteIndexationStatus.FAILED);
+                siteRepository.save(site);
+
+                // stopping the crawl, unhandled urls are kept for resuming
+                context.stop();
+                checkpointStore.save(context);
+            }
+        }
+    }
+
+
+    // all sites are crawled at the same time, each site gets INDEXED status as soon as its own crawl is finished.
+    // While crawling, frontiers of the sites are saved to checkpoints regularly
+    private void crawlSites(boolean incremental, boolean resume) {
+        stopRequested = false;
+        crawls.clear();
+
+        List<CompletableFuture<Void>> completions = new ArrayList<>();
+        for (searchengine.config.Site site : sites.getSites()) {
+            if (stopRequested) {
+                break;
+            }
 
-        sites.getSites().forEach(site -> {
+            // only sites with a checkpoint are resumed, a new indexing makes old checkpoints useless
+            Map<String, Integer> checkpoint = null;
+            if (resume) {
+                checkpoint = checkpointStore.load(site.getUrl());
+                if (checkpoint == null || findLatestSite(site.getUrl()).isEmpty()) {
+                    continue;
+                }
+            } else {
+                checkpointStore.delete(site.getUrl());
+            }
 
-            // creatind a new Site in database
-            Site newSite = new Site();
+            // creating a new generation of the site (or taking the current one for incremental indexing,
+            // and the unfinished one for resuming)
+            Site newSite;
+            if (resume) {
+                newSite = findLatestSite(site.getUrl()).orElseGet(Site::new);
+            } else if (incremental) {
+                newSite = siteRepository.findByUrlAndGeneration(site.getUrl(), SiteGeneration.CURRENT).orElseGet(Site::new);
+            } else {
+                siteGenerations.retireBuilding(site.getUrl());
+                newSite = new Site();
+            }
+            if (newSite.getId() == null) {
+                newSite.setGeneration(SiteGeneration.BUILDING);
+            }
             newSite.setStatus(SiteIndexationStatus.INDEXING);
             newSite.setName(site.getName());
             newSite.setUrl(site.getUrl());
             newSite.setStatusTime(LocalDateTime.now());
+            newSite.setLastError(null);
             siteRepository.save(newSite);
+            if (incremental || resume) {
+                lemmaDictionary.load(newSite.getId());
+            }
 
-            // Creating lists of ForkJoinPool objects and our class that extends it
-            ForkJoinPool forkJoinPool = new ForkJoinPool();
-            SiteParserForkJoin siteParserForkJoin = new SiteParserForkJoin(
-                    pageRepository,
-                    siteRepository,
-                    lemmaRepository,
-                    indexRepository,
-                    newSite,
-                    newSite.getUrl(),
-                    new CopyOnWriteArrayList<Page>(),
-                    new CopyOnWriteArrayList<String>(),
-                    new CopyOnWriteArrayList<String>());
-
-            forkjoinMap.put(forkJoinPool, siteParserForkJoin);
-
-
-            // starting ForkJoinPool
-            CopyOnWriteArrayList<Page> pageList = forkJoinPool.invoke(siteParserForkJoin);
-            if (!SiteParserForkJoin.shutdownForkJoin) {
-                newSite.setStatus(SiteIndexationStatus.INDEXED);
-                siteRepository.save(newSite);
+            UrlSeenSet seenUrls = new UrlSeenSet(sites.getSeenUrlsExactLimit(), sites.getSeenUrlsBloomCapacity());
+            SiteCrawlContext context = new SiteCrawlContext(newSite, seenUrls, true, crawlPipeline, politenessScheduler);
+            context.setNearDuplicates(new NearDuplicateIndex(sites.getNearDuplicateDistance()));
+            context.setMaxDepth(site.getMaxDepth() != null ? site.getMaxDepth() : sites.getMaxDepth());
+            context.setMaxPages(site.getMaxPages() != null ? site.getMaxPages() : sites.getMaxPages());
+            if (incremental) {
+                context.setKnownPages(getKnownPages(context));
             }
-        });
-    }
+            RobotsTxt robotsTxt = RobotsTxt.load(site.getUrl());
+            context.setRobotsTxt(robotsTxt);
+            politenessScheduler.setDelay(context.getHost(), getCrawlDelay(site, robotsTxt));
+            crawlPipeline.register(context);
+            crawls.add(context);
+
+            completions.add(context.getCompletion().thenRun(() -> {
+                if (!context.isStopped()) {
+                    newSite.setStatus(SiteIndexationStatus.INDEXED);
+                    newSite.setStatusTime(LocalDateTime.now());
+                    siteRepository.save(newSite);
+                    // the frequencies of the new generation are written before it is searched
+                    lemmaDictionary.flush();
+                    siteGenerations.activate(newSite);
+                    checkpointStore.delete(newSite.getUrl());
+                }
+            }));
+
+            if (resume) {
+                resumeFromCheckpoint(context, checkpoint);
+            } else {
+                startFromRoot(context);
+            }
+        }
 
-    @Override
-    public void stopIndexing() {
-        for (Map.Entry<ForkJoinPool, SiteParserForkJoin> map : forkjoinMap.entrySet()) {
-            ForkJoinPool forkJoinPool = map.getKey();
-            SiteParserForkJoin siteParserForkJoin = map.getValue();
+        ScheduledFuture<?> checkpointing = checkpointStore.startCheckpointing(crawls);
+        try {
+            // waiting until all pages of all sites are saved
+            CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            checkpointing.cancel(false);
+            lemmaDictionary.flush();
+        }
+    }
 
-            if (!forkJoinPool.isQuiescent()) {
-                Site site = siteParserForkJoin.getSite();
-                site.setLastError("Индексация остановлена пользователем");
-                site.setStatusTime(LocalDateTime.now());
-                site.setStatus(SiteIndexationStatus.FAILED);
-                siteRepository.save(site);
+    private void startFromRoot(SiteCrawlContext context) {
+        UrlCanonicalizer canonicalizer = context.getCanonicalizer();
+        sitemapSeeder.seed(context);
+        context.getSeenUrls().claim(canonicalizer.getRoot());
+        context.submit(canonicalizer.getRoot(), 0);
+
+        // known pages are requested directly: unchanged pages are not parsed, so their links would be lost
+        context.getKnownPages().keySet().forEach(path -> {
+            String url = canonicalizer.toUrl(path);
+            if (context.getSeenUrls().claim(url)) {
+                context.submit(url, 1);
+            }
+        });
+    }
 
-                // getting uncomplete tasks, stopping ForkJoinPools
-                ArrayList<Page> pages = getNotHandledPagesFromForkJoinPool(siteParserForkJoin);
-                pages.forEach(siteParserForkJoin::savePageToDatabase);
-                SiteParserForkJoin.shutdownForkJoin = true;
-                forkJoinPool.shutdown();
+    // urls from the checkpoint are crawled again, pages that are already saved are only marked as seen.
+    // Pages saved after the last checkpoint are fetched once more, but their links are not lost
+    private void resumeFromCheckpoint(SiteCrawlContext context, Map<String, Integer> frontier) {
+        UrlCanonicalizer canonicalizer = context.getCanonicalizer();
+        frontier.forEach((url, depth) -> {
+            String canonicalUrl = canonicalizer.canonicalize(url);
+            if (canonicalUrl != null && context.getSeenUrls().claim(canonicalUrl)) {
+                context.submit(canonicalUrl, depth);
             }
+        });
+        pageRepository.findPageStatesBySite(context.getSite()).forEach(page -> {
+            String url = canonicalizer.canonicalize(canonicalizer.toUrl(page.getPath()));
+            if (url != null) {
+                context.getSeenUrls().claim(url);
+                addFingerprint(context, canonicalizer.toPath(url), page);
+            }
+        });
+
+        // nothing was left to crawl: the root page is parsed again to finish the site properly
+        if (context.getPendingTasks().get() == 0) {
+            context.submit(canonicalizer.getRoot(), 0);
         }
     }
 
@@ -116,57 +215,17 @@ public class IndexingServiceImpl implements IndexingService {
         }
 
         Site site = getOrCreateSite(url);
-        String path = SiteParserForkJoin.AbsolutePathToRelative(url, site);
-        Page page = new Page();
-
-        // delete data from the database if the page has been indexed
-        if (pageRepository.existsByPathAndSite(path, site)) {
-            page = pageRepository.findByPathAndSite(path, site);
-            removeAllPageInfoFromDatabase(page);
+        String canonicalUrl = new UrlCanonicalizer(site.getUrl()).canonicalize(url);
+        if (canonicalUrl == null) {
+            response.setError("Данная страница находится за пределами сайтов, указанных в конфигурационном файле");
+            return response;
         }
 
-        SiteParserForkJoin siteParserForkJoin = new SiteParserForkJoin(
-                pageRepository,
-                siteRepository,
-                lemmaRepository,
-                indexRepository,
-                site,
-                url,
-                new CopyOnWriteArrayList<Page>(),
-                new CopyOnWriteArrayList<String>(),
-                new CopyOnWriteArrayList<String>(Arrays.asList(url))
-        );
-        // start parsing in a separate single thread
-        siteParserForkJoin.parseSinglePage = true;
-        SiteParserForkJoin.shutdownForkJoin = false;
-        new Thread(() -> siteParserForkJoin.compute()).start();
-        return response;
-    }
-
-
-    private void removeAllPageInfoFromDatabase(Page page) {
-        String content = page.getContent();
-        HashMap<String, Integer> lemmas = lemmaService.createLemma(content);
-        decreaseLemmasInDatabase(lemmas);
-        pageRepository.delete(page);
-    }
-
-    private void decreaseLemmasInDatabase(HashMap<String, Integer> lemmas) {
-        ArrayList<Lemma> changedLemmas = new ArrayList<>();
-
-        for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
-            Lemma lemma = lemmaRepository.findLemmaByLemma(entry.getKey()).get();
-            if (lemma != null) {
-                lemma.setFrequency(lemma.getFrequency() - entry.getValue());
-                changedLemmas.add(lemma);
-            }
+        // the page is reindexed in the background, an indexed page is updated with the difference of its lemmas
+        if (!pageReindexer.submit(site, canonicalUrl)) {
+            response.setError("Слишком много страниц ожидают индексации, повторите запрос позже");
         }
-        makeTransactionToDecreaseLemmas(changedLemmas);
-    }
-
-    @Transactional
-    void makeTransactionToDecreaseLemmas(ArrayList<Lemma> changedLemmas) {
-        changedLemmas.forEach(lemma -> lemmaRepository.save(lemma));
+        return response;
     }
 
 
@@ -179,6 +238,12 @@ public class IndexingServiceImpl implements IndexingService {
         }
     }
 
+    // the delay from the site settings, but not less than robots.txt Crawl-delay
+    private long getCrawlDelay(searchengine.config.Site site, RobotsTxt robotsTxt) {
+        long delay = site.getCrawlDelay() != null ? site.getCrawlDelay() : sites.getCrawlDelay();
+        return Math.max(delay, robotsTxt.getCrawlDelayMillis());
+    }
+
     private boolean isSiteFromUrlsList(String url) {
         for (searchengine.config.Site site : sites.getSites()) {
             String domain = site.getUrl();
@@ -192,7 +257,7 @@ public class IndexingServiceImpl implements IndexingService {
     private Site getOrCreateSite(String url) {
         Site site = new Site();
         ArrayList<String> siteNameAndDomain = getSiteNameAndDomainByUrl(url);
-        Optional<Site> optionalSite = siteRepository.findByUrl(siteNameAndDomain.get(1));
+        Optional<Site> optionalSite = siteRepository.findByUrlAndGeneration(siteNameAndDomain.get(1), SiteGeneration.CURRENT);
 
         if (!optionalSite.isPresent()) {
             site.setName(siteNameAndDomain.get(0));
@@ -218,39 +283,28 @@ public class IndexingServiceImpl implements IndexingService {
         return siteNameAndDomain;
     }
 
-    // we need this method when reindexing
-    private void cleanDBBeforeNewIndexing() {
-        indexRepository.deleteAll();
-        lemmaRepository.deleteAll();
-        pageRepository.deleteAll();
-        siteRepository.deleteAll();
-        Site site = new Site();
-        site.setStatus(SiteIndexationStatus.INDEXING);
+    // paths saved before the urls were canonicalized are looked up by their canonical form
+    private Map<String, PageRepository.PageState> getKnownPages(SiteCrawlContext context) {
+        UrlCanonicalizer canonicalizer = context.getCanonicalizer();
+        Map<String, PageRepository.PageState> knownPages = new HashMap<>();
+        pageRepository.findPageStatesBySite(context.getSite()).forEach(page -> {
+            String url = canonicalizer.canonicalize(canonicalizer.toUrl(page.getPath()));
+            if (url != null) {
+                knownPages.put(canonicalizer.toPath(url), page);
+                addFingerprint(context, canonicalizer.toPath(url), page);
+            }
+        });
+        return knownPages;
     }
 
-    // we need this method when stops indexing
-    private ArrayList<Page> getNotHandledPagesFromForkJoinPool(SiteParserForkJoin siteParserForkJoin) {
-        ArrayList<String> taskUrls = new ArrayList<>(siteParserForkJoin.getTaskUrls());
-
-        if (taskUrls.isEmpty()) {
-            return new ArrayList<>();
+    // saved originals are compared with the new pages, so a copy is not indexed when its original is unchanged
+    private void addFingerprint(SiteCrawlContext context, String path, PageRepository.PageState page) {
+        if (page.getCanonicalPath() == null && page.getSimhash() != null) {
+            context.getNearDuplicates().add(path, page.getSimhash());
         }
+    }
 
-        // removing duplicates
-        taskUrls.stream().distinct().collect(Collectors.toList());
-
-        ArrayList<Page> pages = new ArrayList<>();
-        taskUrls.forEach(task -> {
-            Page page = new Page();
-            Site site = siteParserForkJoin.getSite();
-            page.setSite(site);
-            page.setPath(siteParserForkJoin.AbsolutePathToRelative(task, site));
-            page.setCode(00);
-            page.setContent("Индексация остановлена пользователем");
-            pages.add(page);
-        });
-        return pages;
+    private Optional<Site> findLatestSite(String url) {
+        return siteRepository.findFirstByUrlAndGenerationNotOrderByIdDesc(url, SiteGeneration.RETIRED);
     }
 }
-
-
@@ -0,0 +1,484 @@
+package searchengine.services;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SitesList;
+import searchengine.model.Site;
+import searchengine.model.SiteGeneration;
+import searchengine.repositories.SiteRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// the lemma and index tables in memory, searches don't go to the database until the found pages are shown.
+// Every site generation has its own part: the dictionary of its lemma ids by their text, and for every lemma id
+// the sorted ids of its pages with the lemma's frequency on them, and the number of words of every page for ranking.
+// Only the current generations are searched, the one being built is filled as it is crawled,
+// so it is ready when it becomes current.
+// The index is loaded from the database at startup and then gets every change that is committed by PageIndexer
+@Component
+public class InvertedIndex {
+
+    // rows read from the database per round-trip while loading
+    private static final int FETCH_SIZE = 10_000;
+    private static final PostingList EMPTY = new PostingList();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SiteRepository siteRepository;
+
+    private final ConcurrentHashMap<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+    // the searched generation of every site by its url
+    private final ConcurrentHashMap<String, SiteIndex> currentSites = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    // changed whenever the searched data changes, so results found before are known to be outdated.
+    // Pages committed by a crawl of a current site change it at most once per refresh interval,
+    // otherwise every persisted batch would drop the cached search results
+    private final AtomicLong version = new AtomicLong();
+    private final long refreshMillis;
+    private final AtomicLong versionChangedAt = new AtomicLong();
+    private volatile boolean changedSinceVersion;
+
+    public InvertedIndex(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, SiteRepository siteRepository,
+                         SitesList settings) {
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.siteRepository = siteRepository;
+        this.refreshMillis = settings.getSearchCacheRefreshMillis();
+    }
+
+    // sites are locked before the loading starts, so changes committed meanwhile wait and are applied on top of the loaded data.
+    // Started by SiteGenerations when the generations of the sites are known
+    public void start() {
+        List<SiteIndex> loading = new ArrayList<>();
+        Thread thread = new Thread(() -> {
+            try {
+                for (Site site : siteRepository.findAllByGenerationNotOrderById(SiteGeneration.RETIRED)) {
+                    SiteIndex siteIndex = new SiteIndex(site.getId(), site.getUrl());
+                    siteIndex.lock.writeLock().lock();
+                    loading.add(siteIndex);
+                    sites.put(site.getId(), siteIndex);
+                    if (site.getGeneration() == SiteGeneration.CURRENT) {
+                        currentSites.put(site.getUrl(), siteIndex);
+                    }
+                }
+                for (SiteIndex siteIndex : loading) {
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> load(siteIndex));
+                    } finally {
+                        siteIndex.lock.writeLock().unlock();
+                    }
+                }
+                changeVersion();
+                loaded.complete(null);
+            } catch (Exception e) {
+                loaded.completeExceptionally(e);
+            }
+        }, "inverted-index-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // the generation of the site becomes the searched one, older generations of the url are dropped
+    public void activate(int siteId, String url) {
+        SiteIndex siteIndex = getOrCreateSite(siteId, url);
+        currentSites.put(url, siteIndex);
+        sites.values().removeIf(other -> other.url.equals(url) && other.siteId != siteId);
+        changeVersion();
+    }
+
+    public void removeSite(int siteId) {
+        SiteIndex siteIndex = sites.remove(siteId);
+        if (siteIndex != null && currentSites.remove(siteIndex.url, siteIndex)) {
+            changeVersion();
+        }
+    }
+
+    // changes that are waiting for the refresh interval get their version here, so they are seen without new commits
+    public long getVersion() {
+        changeVersionIfDue();
+        return version.get();
+    }
+
+    // changes of a transaction are applied after it is committed, so searches never see pages that are rolled back
+    public void applyAfterCommit(Changes changes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(changes);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(changes);
+            }
+        });
+    }
+
+    // searches wait until the index is loaded
+    public void awaitLoading() {
+        loaded.join();
+    }
+
+    // the current generations of all sites, or of the one site if its url is given
+    public List<SiteIndex> getSearchedSites(String siteUrl) {
+        awaitLoading();
+        if (siteUrl != null && !siteUrl.isBlank()) {
+            SiteIndex siteIndex = currentSites.get(siteUrl);
+            return siteIndex == null ? List.of() : List.of(siteIndex);
+        }
+        return new ArrayList<>(currentSites.values());
+    }
+
+    public int getPageCount(Collection<SiteIndex> searchedSites) {
+        int pages = 0;
+        for (SiteIndex siteIndex : searchedSites) {
+            siteIndex.lock.readLock().lock();
+            try {
+                pages += siteIndex.lengths.size();
+            } finally {
+                siteIndex.lock.readLock().unlock();
+            }
+        }
+        return pages;
+    }
+
+    // the average number of words of the pages
+    public double getAverageLength(Collection<SiteIndex> searchedSites) {
+        long pages = 0;
+        long length = 0;
+        for (SiteIndex siteIndex : searchedSites) {
+            siteIndex.lock.readLock().lock();
+            try {
+                pages += siteIndex.lengths.size();
+                length += siteIndex.totalLength;
+            } finally {
+                siteIndex.lock.readLock().unlock();
+            }
+        }
+        return pages == 0 ? 0 : (double) length / pages;
+    }
+
+    // the number of pages with the lemma, 0 if no site has it
+    public int getDocumentFrequency(Collection<SiteIndex> searchedSites, String lemma) {
+        int frequency = 0;
+        for (SiteIndex siteIndex : searchedSites) {
+            siteIndex.lock.readLock().lock();
+            try {
+                PostingList postings = siteIndex.getPostings(lemma);
+                frequency += postings == null ? 0 : postings.size();
+            } finally {
+                siteIndex.lock.readLock().unlock();
+            }
+        }
+        return frequency;
+    }
+
+    // the most relevant pages that have all the lemmas by their BM25 relevance, and the number of all such pages.
+    // The statistics of all searched sites are used, so the relevance of pages from different sites can be compared
+    public TopPages findPages(Collection<SiteIndex> searchedSites, List<String> lemmas, int count) {
+        TopPages top = new TopPages(count);
+        if (lemmas.isEmpty()) {
+            return top;
+        }
+        int pages = getPageCount(searchedSites);
+        double averageLength = getAverageLength(searchedSites);
+        double[] idf = new double[lemmas.size()];
+        for (int i = 0; i < idf.length; i++) {
+            idf[i] = Bm25.idf(pages, getDocumentFrequency(searchedSites, lemmas.get(i)));
+        }
+        for (SiteIndex siteIndex : searchedSites) {
+            int[] lemmaIds = siteIndex.getLemmaIds(lemmas);
+            if (lemmaIds != null) {
+                siteIndex.collect(lemmaIds, idf, averageLength, top);
+            }
+        }
+        return top;
+    }
+
+    private SiteIndex getOrCreateSite(int siteId, String url) {
+        return sites.computeIfAbsent(siteId, id -> new SiteIndex(id, url));
+    }
+
+    private void apply(Changes changes) {
+        HashMap<SiteIndex, List<Change>> bySite = new HashMap<>();
+        for (Change change : changes.list) {
+            bySite.computeIfAbsent(getOrCreateSite(change.siteId, change.siteUrl), site -> new ArrayList<>()).add(change);
+        }
+        bySite.forEach((siteIndex, siteChanges) -> {
+            siteIndex.lock.writeLock().lock();
+            try {
+                siteChanges.forEach(siteIndex::apply);
+            } finally {
+                siteIndex.lock.writeLock().unlock();
+            }
+            // a generation that is being built is not searched yet
+            if (currentSites.get(siteIndex.url) == siteIndex) {
+                changedSinceVersion = true;
+                changeVersionIfDue();
+            }
+        });
+    }
+
+    private void changeVersion() {
+        changedSinceVersion = false;
+        versionChangedAt.set(System.currentTimeMillis());
+        version.incrementAndGet();
+    }
+
+    private void changeVersionIfDue() {
+        if (!changedSinceVersion) {
+            return;
+        }
+        long changedAt = versionChangedAt.get();
+        long now = System.currentTimeMillis();
+        // only one of the threads that see the interval passed changes the version
+        if (now - changedAt >= refreshMillis && versionChangedAt.compareAndSet(changedAt, now)) {
+            changedSinceVersion = false;
+            version.incrementAndGet();
+        }
+    }
+
+    private void load(SiteIndex siteIndex) {
+        // pages saved before their lengths were stored get them from their index rows
+        HashSet<Integer> unknownLengths = new HashSet<>();
+        jdbcTemplate.query("SELECT id, length FROM page WHERE site_id = ?",
+                resultSet -> {
+                    int length = resultSet.getInt(2);
+                    if (resultSet.wasNull()) {
+                        unknownLengths.add(resultSet.getInt(1));
+                    }
+                    siteIndex.putPage(resultSet.getInt(1), length);
+                }, siteIndex.siteId);
+        jdbcTemplate.query("SELECT id, lemma FROM lemma WHERE site_id = ?",
+                resultSet -> {
+                    siteIndex.terms.put(resultSet.getString(2), resultSet.getInt(1));
+                }, siteIndex.siteId);
+        // rows go in the order of pages, so every page is appended to the end of its lists
+        jdbcTemplate.query("SELECT i.lemma_id, i.page_id, i.rank FROM index i JOIN page p ON p.id = i.page_id " +
+                        "WHERE p.site_id = ? ORDER BY i.page_id",
+                resultSet -> {
+                    int pageId = resultSet.getInt(2);
+                    int frequency = (int) resultSet.getFloat(3);
+                    siteIndex.postings.computeIfAbsent(resultSet.getInt(1), id -> new PostingList()).put(pageId, frequency);
+                    if (unknownLengths.contains(pageId)) {
+                        siteIndex.putPage(pageId, siteIndex.lengths.get(pageId) + frequency);
+                    }
+                }, siteIndex.siteId);
+    }
+
+
+    // the index of one site generation. It is changed only under the write lock.
+    // Lemma ids are the ids of the lemma rows, so every generation has its own ids
+    public static class SiteIndex {
+        private final int siteId;
+        private final String url;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // lemma -> its id, and lemma id -> its pages
+        private final HashMap<String, Integer> terms = new HashMap<>();
+        private final HashMap<Integer, PostingList> postings = new HashMap<>();
+        // page id -> the number of its words
+        private final HashMap<Integer, Integer> lengths = new HashMap<>();
+        private long totalLength;
+
+        SiteIndex(int siteId, String url) {
+            this.siteId = siteId;
+            this.url = url;
+        }
+
+        private PostingList getPostings(String lemma) {
+            Integer lemmaId = terms.get(lemma);
+            return lemmaId == null ? null : postings.get(lemmaId);
+        }
+
+        // ids of the lemmas in the same order, null if one of them is unknown
+        public int[] getLemmaIds(List<String> lemmas) {
+            lock.readLock().lock();
+            try {
+                int[] lemmaIds = new int[lemmas.size()];
+                for (int i = 0; i < lemmaIds.length; i++) {
+                    Integer lemmaId = terms.get(lemmas.get(i));
+                    if (lemmaId == null) {
+                        return null;
+                    }
+                    lemmaIds[i] = lemmaId;
+                }
+                return lemmaIds;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private PostingList[] getPostingLists(int[] lemmaIds) {
+            PostingList[] lists = new PostingList[lemmaIds.length];
+            for (int i = 0; i < lemmaIds.length; i++) {
+                lists[i] = postings.getOrDefault(lemmaIds[i], EMPTY);
+            }
+            return lists;
+        }
+
+        // every lemma has an upper bound of its score from the highest frequency in its list, so the lists of lemmas
+        // that can't lift a page into the collected ones are not read through, see PostingList.maxScore.
+        // Found pages are counted by the collector, see TopPages.total
+        private void collect(int[] lemmaIds, double[] idf, double averageLength, TopPages top) {
+            lock.readLock().lock();
+            try {
+                PostingList[] lists = getPostingLists(lemmaIds);
+                double[] bounds = new double[lists.length];
+                for (int i = 0; i < lists.length; i++) {
+                    bounds[i] = Bm25.upperBound(lists[i].getMaxFrequency(), idf[i]);
+                }
+                PostingList.Scorer scorer = (list, page, frequency) ->
+                        Bm25.score(frequency, lengths.getOrDefault(page, 0), averageLength, idf[list]);
+                PostingList.maxScore(lists, bounds, scorer, new PostingList.Collector() {
+                    @Override
+                    public double getThreshold() {
+                        return top.getThreshold();
+                    }
+
+                    @Override
+                    public void collect(int page, double score) {
+                        top.total++;
+                        top.offer(new Match(siteId, page, score));
+                    }
+                });
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void putPage(int pageId, int length) {
+            Integer oldLength = lengths.put(pageId, length);
+            totalLength += length - (oldLength == null ? 0 : oldLength);
+        }
+
+        private void apply(Change change) {
+            if (change.lemmaId == null) {
+                if (!change.removed) {
+                    putPage(change.pageId, change.value);
+                } else {
+                    Integer oldLength = lengths.remove(change.pageId);
+                    totalLength -= oldLength == null ? 0 : oldLength;
+                }
+            } else if (!change.removed) {
+                terms.putIfAbsent(change.lemma, change.lemmaId);
+                postings.computeIfAbsent(change.lemmaId, id -> new PostingList()).put(change.pageId, change.value);
+            } else {
+                PostingList lemmaPostings = postings.get(change.lemmaId);
+                if (lemmaPostings != null) {
+                    lemmaPostings.remove(change.pageId);
+                }
+            }
+        }
+    }
+
+    // a found page and its relevance for the query
+    @Getter
+    @RequiredArgsConstructor
+    public static class Match {
+        private final int siteId;
+        private final int pageId;
+        private final double relevance;
+    }
+
+    // the best pages of a search in a heap of the given size, the worst of them on the top of the heap
+    public static class TopPages {
+        // pages after the kept ones that are counted exactly, the pruning starts only after that
+        static final int EXACT_TOTAL = 1000;
+        // the worst page goes first, of pages with the same relevance the one with the bigger id is worse
+        private static final Comparator<Match> WORST_FIRST = Comparator.comparingDouble(Match::getRelevance)
+                .thenComparing(Comparator.comparingInt(Match::getPageId).reversed());
+
+        private final int count;
+        private final int exactTotal;
+        private final PriorityQueue<Match> heap;
+        // the number of found pages, not only of the kept ones. Up to exactTotal every found page is collected,
+        // after that pages that can't get in are skipped without being counted, so a bigger total is a lower bound
+        private int total;
+
+        TopPages(int count) {
+            this.count = Math.max(1, count);
+            this.exactTotal = this.count + EXACT_TOTAL;
+            this.heap = new PriorityQueue<>(this.count + 1, WORST_FIRST);
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        // the kept pages from the most relevant one
+        public List<Match> getMatches() {
+            List<Match> matches = new ArrayList<>(heap);
+            matches.sort(WORST_FIRST.reversed());
+            return matches;
+        }
+
+        // a page with a lower relevance can't get in
+        private double getThreshold() {
+            return total < exactTotal ? Double.NEGATIVE_INFINITY : heap.peek().getRelevance();
+        }
+
+        private void offer(Match match) {
+            if (heap.size() < count) {
+                heap.add(match);
+            } else if (WORST_FIRST.compare(match, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(match);
+            }
+        }
+    }
+
+    // changes of one transaction
+    public static class Changes {
+        private final List<Change> list = new ArrayList<>();
+
+        public void putPage(Site site, int pageId, int length) {
+            list.add(new Change(site.getId(), site.getUrl(), pageId, null, null, length, false));
+        }
+
+        public void removePage(Site site, int pageId) {
+            list.add(new Change(site.getId(), site.getUrl(), pageId, null, null, 0, true));
+        }
+
+        public void putLemma(Site site, int pageId, String lemma, int lemmaId, int frequency) {
+            list.add(new Change(site.getId(), site.getUrl(), pageId, lemmaId, lemma, frequency, false));
+        }
+
+        public void removeLemma(Site site, int pageId, int lemmaId) {
+            list.add(new Change(site.getId(), site.getUrl(), pageId, lemmaId, null, 0, true));
+        }
+
+        public boolean isEmpty() {
+            return list.isEmpty();
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Change {
+        private final int siteId;
+        private final String siteUrl;
+        private final int pageId;
+        // null for changes of the page itself
+        private final Integer lemmaId;
+        private final String lemma;
+        // the length of the page or the frequency of the lemma on it
+        private final int value;
+        private final boolean removed;
+    }
+}
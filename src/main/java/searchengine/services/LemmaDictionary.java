@@ -0,0 +1,196 @@
+package searchengine.services;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SitesList;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// ids of the lemmas of every site, kept in memory so the writers don't look lemmas up in the database.
+// A new lemma gets its id from the sequence and is inserted in the writer's transaction, the id is kept only after the commit.
+// Frequency changes are summed up in counters and written in batches by one thread
+@Component
+public class LemmaDictionary {
+
+    private static final String INSERT_LEMMA = "INSERT INTO lemma (id, site_id, lemma, frequency) VALUES (?, ?, ?, 0) " +
+            "ON CONFLICT (site_id, lemma) DO NOTHING";
+    private static final String UPDATE_FREQUENCY = "UPDATE lemma SET frequency = frequency + ? WHERE id = ?";
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SequenceIds lemmaIds;
+    private final long flushMillis;
+
+    private final ConcurrentHashMap<LemmaKey, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, LongAdder> frequencyChanges = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lemma-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LemmaDictionary(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, SitesList settings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.lemmaIds = new SequenceIds(jdbcTemplate, "lemma_seq");
+        this.flushMillis = settings.getLemmaFlushMillis();
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    // lemmas saved by the previous indexing, so they are not inserted again
+    public void load(int siteId) {
+        jdbcTemplate.query("SELECT id, lemma FROM lemma WHERE site_id = ?",
+                resultSet -> {
+                    ids.put(new LemmaKey(siteId, resultSet.getString(2)), resultSet.getInt(1));
+                }, siteId);
+    }
+
+    // lemmas of a retired site generation are deleted from the database. Their changes that are not written yet
+    // only update no rows, so they are left to the next flush
+    public void removeSite(int siteId) {
+        ids.keySet().removeIf(key -> key.siteId == siteId);
+    }
+
+    // ids of the lemmas of the site, new lemmas are created in the caller's transaction
+    public Map<String, Integer> getIds(int siteId, Collection<String> lemmas) {
+        HashMap<String, Integer> result = new HashMap<>();
+        List<String> newLemmas = new ArrayList<>();
+        for (String lemma : lemmas) {
+            Integer id = ids.get(new LemmaKey(siteId, lemma));
+            if (id != null) {
+                result.put(lemma, id);
+            } else {
+                newLemmas.add(lemma);
+            }
+        }
+        if (!newLemmas.isEmpty()) {
+            createLemmas(siteId, newLemmas).forEach(result::put);
+        }
+        return result;
+    }
+
+    // the changes are counted only when the transaction that wrote the indexes is committed
+    public void addFrequencies(Map<Integer, Integer> changes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyFrequencies(changes);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                applyFrequencies(changes);
+            }
+        });
+    }
+
+    // writes the summed up changes in the order of ids, so the updates don't deadlock with each other
+    public synchronized void flush() {
+        List<int[]> updates = new ArrayList<>();
+        frequencyChanges.forEach((id, counter) -> {
+            long change = counter.sumThenReset();
+            if (change != 0) {
+                updates.add(new int[]{id, (int) change});
+            }
+        });
+        if (updates.isEmpty()) {
+            return;
+        }
+        updates.sort((update1, update2) -> Integer.compare(update1[0], update2[0]));
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPDATE_FREQUENCY, updates, BATCH_SIZE,
+                    (statement, update) -> {
+                        statement.setInt(1, update[1]);
+                        statement.setInt(2, update[0]);
+                    }));
+        } catch (Exception e) {
+            // the changes will be written with the next flush
+            updates.forEach(update -> frequencyChanges.computeIfAbsent(update[0], id -> new LongAdder()).add(update[1]));
+            System.out.println("Не удалось сохранить частоты лемм: " + e.getMessage());
+        }
+    }
+
+
+    private void applyFrequencies(Map<Integer, Integer> changes) {
+        changes.forEach((id, change) -> frequencyChanges.computeIfAbsent(id, key -> new LongAdder()).add(change));
+    }
+
+    // lemmas are inserted in alphabetical order, so two writers with the same new lemmas wait for each other instead of deadlocking.
+    // If another writer has already inserted the lemma, its id is taken from the database.
+    // Other writers get the new ids only after the commit: if the transaction is rolled back, its lemma rows are gone too
+    private Map<String, Integer> createLemmas(int siteId, List<String> newLemmas) {
+        Collections.sort(newLemmas);
+        long[] newIds = lemmaIds.allocate(newLemmas.size());
+        List<Integer> positions = new ArrayList<>(newLemmas.size());
+        for (int i = 0; i < newLemmas.size(); i++) {
+            positions.add(i);
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_LEMMA, positions, BATCH_SIZE,
+                (statement, position) -> {
+                    statement.setInt(1, (int) newIds[position]);
+                    statement.setInt(2, siteId);
+                    statement.setString(3, newLemmas.get(position));
+                });
+
+        HashMap<String, Integer> created = new HashMap<>();
+        for (int i = 0; i < newLemmas.size(); i++) {
+            String lemma = newLemmas.get(i);
+            int id = counts[i / BATCH_SIZE][i % BATCH_SIZE] != 0 ? (int) newIds[i]
+                    : jdbcTemplate.queryForObject("SELECT id FROM lemma WHERE site_id = ? AND lemma = ?", Integer.class, siteId, lemma);
+            created.put(lemma, id);
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(siteId, created);
+        } else {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(siteId, created);
+                }
+            });
+        }
+        return created;
+    }
+
+    private void publish(int siteId, Map<String, Integer> created) {
+        created.forEach((lemma, id) -> ids.putIfAbsent(new LemmaKey(siteId, lemma), id));
+    }
+
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class LemmaKey {
+        private final int siteId;
+        private final String lemma;
+    }
+}
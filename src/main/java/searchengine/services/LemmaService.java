@@ -2,32 +2,74 @@ package searchengine.services;
 
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.jsoup.Jsoup;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
-import searchengine.model.Page;
+import searchengine.config.SitesList;
+import searchengine.dto.statistics.MorphologyStatistics;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Service
 public class LemmaService {
 
-    private final LuceneMorphology morphology;
-    private static final ArrayList<String> particlesNames = new ArrayList<>(
-            Arrays.asList("МЕЖД", "ПРЕДЛ", "СОЮЗ", "ЧАСТ"));
-
-
-    public LemmaService(LuceneMorphology luceneMorphology) {
-        this.morphology = luceneMorphology;
+    // a word goes to the morphology of its script, a text may have words of both languages.
+    // The morphologies are shared by all threads, their results for the frequent words are cached
+    private final LuceneMorphology russianMorphology;
+    private final LuceneMorphology englishMorphology;
+    private final WordFormCache wordForms;
+    // russian and english function words
+    private static final String[] particlesNames = {"МЕЖД", "ПРЕДЛ", "СОЮЗ", "ЧАСТ", "INT", "PREP", "CONJ", "PART", "ARTICLE"};
+    // looking for Cyrillic and Latin words
+    private static final Pattern WORD_PATTERN = Pattern.compile("\\b(?:[а-яА-Я]+|[a-zA-Z]+)\\b");
+
+
+    public LemmaService(@Qualifier("russianMorphology") LuceneMorphology russianMorphology,
+                        @Qualifier("englishMorphology") LuceneMorphology englishMorphology,
+                        SitesList settings) {
+        this.russianMorphology = russianMorphology;
+        this.englishMorphology = englishMorphology;
+        this.wordForms = new WordFormCache(settings.getWordFormCacheSize(), this::lookUp);
     }
 
     // main method that returns Map with unique lemmas and their repetition rate
     public HashMap<String, Integer> createLemma(String text) {
-        String noHtmlText = cleanFromHtml(text);
-        ArrayList<String> separatedText = separateText(noHtmlText);
-        ArrayList<String> baseWordsList = getBaseWordsList(separatedText);
-        HashMap<String, Integer> lemmas = collectLemmas(baseWordsList);
+        return createLemmaFromText(cleanFromHtml(text));
+    }
+
+    // the same for a text without html. Words are counted in one pass before the morphology is asked,
+    // so every distinct word is looked up once however often it is repeated
+    public HashMap<String, Integer> createLemmaFromText(String text) {
+        WordCounter words = WordCounter.count(text);
+        HashMap<String, Integer> lemmas = new HashMap<>(words.size() * 2);
+        words.forEach((word, count) -> {
+            WordFormCache.WordForm wordForm = wordForms.get(word);
+            if (wordForm.isIndexed()) {
+                lemmas.merge(wordForm.getNormalForm(), count, Integer::sum);
+            }
+        });
+        return lemmas;
+    }
+
+
+    // lemmas of a text without html with the positions of their words in ascending order,
+    // the number of positions is the lemma's repetition rate
+    public HashMap<String, int[]> createLemmaPositions(String text) {
+        return createLemmaPositions(WordCounter.count(text));
+    }
+
+    // the same for words that are already counted
+    public HashMap<String, int[]> createLemmaPositions(WordCounter words) {
+        HashMap<String, int[]> lemmas = new HashMap<>(words.size() * 2);
+        words.forEachWithPositions((word, positions) -> {
+            WordFormCache.WordForm wordForm = wordForms.get(word);
+            if (wordForm.isIndexed()) {
+                lemmas.merge(wordForm.getNormalForm(), positions, LemmaService::mergePositions);
+            }
+        });
         return lemmas;
     }
 
@@ -41,10 +83,7 @@ public class LemmaService {
 
     public ArrayList<String> separateText(String text) {
         ArrayList<String> wordsList = new ArrayList<>();
-
-        // looking only for Cyrillic words
-        Pattern pattern = Pattern.compile("\\b[а-яА-Я]+\\b");
-        Matcher matcher = pattern.matcher(text);
+        Matcher matcher = WORD_PATTERN.matcher(text);
         while (matcher.find()) {
             String word = matcher.group().toLowerCase();
             wordsList.add(word);
@@ -61,23 +100,19 @@ public class LemmaService {
                 continue;
             }
 
-            List<String> wordInfoList = morphology.getMorphInfo(word);
-            String[] wordInfo = wordInfoList.toString().replaceAll("]", "").split("\\s");
-            if (particlesNames.contains(wordInfo[1])) {
+            WordFormCache.WordForm wordForm = wordForms.get(word);
+            if (!wordForm.isIndexed()) {
                 continue;
             }
-            String normalForm = morphology.getNormalForms(word).get(0);
-            baseForms.add(normalForm);
+            baseForms.add(wordForm.getNormalForm());
         }
         return baseForms;
     }
 
     public String getBaseWord(String word) {
-        String result = "";
-        try {
-            result = morphology.getNormalForms(word).get(0);
-        } catch (Exception e) {
-            return result;
+        String result = wordForms.get(word).getNormalForm();
+        if (result == null) {
+            return "";
         }
         result = result.replaceAll("\\d", "");
         if (result.length() < 3) {
@@ -87,21 +122,50 @@ public class LemmaService {
     }
 
 
-    private HashMap<String, Integer> collectLemmas(ArrayList<String> baseWordsList) {
-        HashMap<String, Integer> lemmas = new HashMap<>();
-        for (String word : baseWordsList) {
-            if (!lemmas.containsKey(word)) {
-                lemmas.put(word, 1);
-            } else lemmas.put(word, lemmas.get(word) + 1);
+    public MorphologyStatistics getCacheStatistics() {
+        return wordForms.getStatistics();
+    }
+
+    // the first morphology variant of the word. Its info looks like "слово|A С мр,ед,им", the part of speech is after the space.
+    // Words are lowercase and have letters of one script only, so the first letter tells the language
+    private WordFormCache.WordForm lookUp(String word) {
+        try {
+            LuceneMorphology morphology = WordCounter.isLatin(word.charAt(0)) ? englishMorphology : russianMorphology;
+            String normalForm = morphology.getNormalForms(word).get(0);
+            String info = morphology.getMorphInfo(word).get(0);
+            int start = info.indexOf(' ') + 1;
+            int end = info.indexOf(' ', start);
+            boolean functionWord = start > 0 && isParticle(info, start, end < 0 ? info.length() : end);
+            return new WordFormCache.WordForm(normalForm, functionWord);
+        } catch (Exception e) {
+            return new WordFormCache.WordForm(null, false);
         }
-        return lemmas;
     }
 
-    // creating a list of lemmas from a page. Lemmas repetitions are possible
-    public ArrayList<String> getLemmasListFromPage(Page page) {
-        String noHtmlText = cleanFromHtml(page.getContent());
-        ArrayList<String> separatedText = separateText(noHtmlText);
-        ArrayList<String> baseWordsList = getBaseWordsList(separatedText);
-        return baseWordsList;
+    // different forms of one lemma never share a position
+    private static int[] mergePositions(int[] positions1, int[] positions2) {
+        int[] merged = new int[positions1.length + positions2.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < positions1.length && j < positions2.length) {
+            merged[k++] = positions1[i] < positions2[j] ? positions1[i++] : positions2[j++];
+        }
+        while (i < positions1.length) {
+            merged[k++] = positions1[i++];
+        }
+        while (j < positions2.length) {
+            merged[k++] = positions2[j++];
+        }
+        return merged;
+    }
+
+    private static boolean isParticle(String info, int start, int end) {
+        for (String particle : particlesNames) {
+            if (particle.length() == end - start && info.startsWith(particle, start)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
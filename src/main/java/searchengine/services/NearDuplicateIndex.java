@@ -0,0 +1,134 @@
+package searchengine.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// finds pages of one site with almost the same text (print versions, pagination and session parameter variants).
+// Every page gets a 64-bit SimHash of its words, pages are near-duplicates if their hashes differ in maxDistance bits or less.
+// The hash is split into maxDistance + 1 bands: two hashes that close have at least one equal band,
+// so only pages from the same band buckets are compared
+public class NearDuplicateIndex {
+
+    // shorter texts (menus, empty pages) are too similar to each other to be compared
+    private static final int MIN_WORDS = 20;
+
+    private final int maxDistance;
+    private final int bands;
+    private final int bandBits;
+    private final List<Map<Long, List<Fingerprint>>> bandTables = new ArrayList<>();
+
+    // negative distance turns the detection off
+    public NearDuplicateIndex(int maxDistance) {
+        this.maxDistance = Math.min(maxDistance, 15);
+        this.bands = this.maxDistance + 1;
+        this.bandBits = 64 / Math.max(bands, 1);
+        for (int i = 0; i < bands; i++) {
+            bandTables.add(new HashMap<>());
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxDistance >= 0;
+    }
+
+    // returns the path of an earlier page with almost the same text or adds the page as a new original.
+    // A page is never a duplicate of its own previous version
+    public synchronized String findOrAdd(String path, long simHash) {
+        String original = find(path, simHash);
+        if (original == null) {
+            add(path, simHash);
+        }
+        return original;
+    }
+
+    // returns the path of an earlier page with almost the same text, the page itself is not added
+    public synchronized String find(String path, long simHash) {
+        if (!isEnabled() || simHash == 0) {
+            return null;
+        }
+        for (int band = 0; band < bands; band++) {
+            List<Fingerprint> bucket = bandTables.get(band).get(getBand(simHash, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (Fingerprint fingerprint : bucket) {
+                if (!fingerprint.path.equals(path) && Long.bitCount(fingerprint.simHash ^ simHash) <= maxDistance) {
+                    return fingerprint.path;
+                }
+            }
+        }
+        return null;
+    }
+
+    // pages from the previous indexing are added before the crawl
+    public synchronized void add(String path, long simHash) {
+        if (!isEnabled() || simHash == 0) {
+            return;
+        }
+        Fingerprint fingerprint = new Fingerprint(path, simHash);
+        for (int band = 0; band < bands; band++) {
+            bandTables.get(band).computeIfAbsent(getBand(simHash, band), key -> new ArrayList<>()).add(fingerprint);
+        }
+    }
+
+    // the last band takes the bits that are left
+    private long getBand(long simHash, int band) {
+        int shift = band * bandBits;
+        int bits = band == bands - 1 ? 64 - shift : bandBits;
+        long value = simHash >>> shift;
+        return bits == 64 ? value : value & ((1L << bits) - 1);
+    }
+
+    // every word votes for the bits of its hash, 0 means the text is too short to have a fingerprint
+    public static long simHash(String text) {
+        int[] votes = new int[64];
+        int words = 0;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            long hash = 0xcbf29ce484222325L;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                hash ^= Character.toLowerCase(text.charAt(i));
+                hash *= 0x100000001b3L;
+                i++;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+            }
+            words++;
+        }
+        if (words < MIN_WORDS) {
+            return 0;
+        }
+
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return simHash;
+    }
+
+
+    private static class Fingerprint {
+        private final String path;
+        private final long simHash;
+
+        Fingerprint(String path, long simHash) {
+            this.path = path;
+            this.simHash = simHash;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package searchengine.services;
+
+import lombok.Getter;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// everything the crawler needs from a parsed page, collected in one walk over the document:
+// links, title and visible text, instead of a separate select() and text() walk for each of them.
+// The words of the text are counted once and shared by all their users
+@Getter
+public class PageAnalysis {
+
+    private final String title;
+    // visible text of the body, whitespace is collapsed like Element.text() does it
+    private final String bodyText;
+    // title and body text, the same as Document.text() gives for the usual page
+    private final String text;
+    // absolute urls of the links, empty if the links were not needed
+    private final List<String> links;
+    private WordCounter words;
+
+    private PageAnalysis(String title, String bodyText, List<String> links) {
+        this.title = title;
+        this.bodyText = bodyText;
+        this.text = title.isEmpty() ? bodyText : bodyText.isEmpty() ? title : title + " " + bodyText;
+        this.links = links;
+    }
+
+    public static PageAnalysis analyze(Document doc, boolean collectLinks) {
+        Collector collector = new Collector(collectLinks);
+        NodeTraversor.traverse(collector, doc);
+        return new PageAnalysis(collector.title, collector.text.toString().trim(), collector.links);
+    }
+
+    // words are counted on the first request, pages that are copies of other pages don't need them
+    public WordCounter getWords() {
+        if (words == null) {
+            words = WordCounter.count(text);
+        }
+        return words;
+    }
+
+
+    private static class Collector implements NodeVisitor {
+        private final boolean collectLinks;
+        private final StringBuilder text = new StringBuilder();
+        private final List<String> links = new ArrayList<>();
+        private String title = "";
+        private int bodyDepth = -1;
+
+        Collector(boolean collectLinks) {
+            this.collectLinks = collectLinks;
+        }
+
+        @Override
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode) {
+                if (bodyDepth >= 0) {
+                    appendNormalized(((TextNode) node).getWholeText());
+                }
+                return;
+            }
+            if (!(node instanceof Element)) {
+                return;
+            }
+            Element element = (Element) node;
+            String name = element.normalName();
+            if (name.equals("body") && bodyDepth < 0) {
+                bodyDepth = depth;
+            } else if (name.equals("title") && title.isEmpty()) {
+                title = element.text();
+            } else if (collectLinks && name.equals("a") && element.hasAttr("href")) {
+                links.add(element.absUrl("href"));
+            }
+            if (bodyDepth >= 0 && (element.isBlock() || name.equals("br"))) {
+                appendSpace();
+            }
+        }
+
+        @Override
+        public void tail(Node node, int depth) {
+            if (!(node instanceof Element) || bodyDepth < 0) {
+                return;
+            }
+            if (((Element) node).isBlock()) {
+                appendSpace();
+            }
+            if (depth == bodyDepth) {
+                bodyDepth = -1;
+            }
+        }
+
+        private void appendNormalized(String string) {
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (Character.isWhitespace(c) || c == '\u00A0') {
+                    appendSpace();
+                } else {
+                    text.append(c);
+                }
+            }
+        }
+
+        private void appendSpace() {
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') {
+                text.append(' ');
+            }
+        }
+    }
+}
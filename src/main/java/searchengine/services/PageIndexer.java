@@ -0,0 +1,256 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.model.Index;
+import searchengine.model.Lemma;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.PageContentRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+// writes crawled pages with their lemmas and indexes to the database, the same changes go to the in-memory index after the commit
+@Component
+@RequiredArgsConstructor
+public class PageIndexer {
+
+    private final PageRepository pageRepository;
+    private final SiteRepository siteRepository;
+    private final IndexRepository indexRepository;
+    private final PageContentRepository pageContentRepository;
+    private final BulkIndexWriter bulkIndexWriter;
+    private final LemmaDictionary lemmaDictionary;
+    private final InvertedIndex invertedIndex;
+
+
+    public boolean savePageToDatabase(Page page) {
+        if (!pageRepository.existsByPathAndSite(page.getPath(), page.getSite())) {
+            pageRepository.save(page);
+            return true;
+        }
+        return false;
+    }
+
+    // saves the pages, their lemmas and indexes. Lemmas of the pages and their positions are already found by the parse stage.
+    // Pages and indexes of the whole batch are inserted with batched statements,
+    // lemma ids are taken from the dictionary and the frequencies are added to its counters
+    public void indexPages(LinkedHashMap<Page, HashMap<String, int[]>> pages) {
+        pages.forEach((page, lemmas) -> page.setLength(getLength(lemmas)));
+        List<Page> savedPages = bulkIndexWriter.insertPages(new ArrayList<>(pages.keySet()));
+        if (savedPages.isEmpty()) {
+            return;
+        }
+
+        // lemmas of each site are resolved together, so new lemmas are created with one statement.
+        // Sites go in the order of their ids, so writers insert the same new lemmas in the same order
+        TreeMap<Integer, Set<String>> siteLemmas = new TreeMap<>();
+        for (Page page : savedPages) {
+            siteLemmas.computeIfAbsent(page.getSite().getId(), id -> new HashSet<>()).addAll(pages.get(page).keySet());
+        }
+        HashMap<Integer, Map<String, Integer>> lemmaIds = new HashMap<>();
+        siteLemmas.forEach((siteId, lemmas) -> lemmaIds.put(siteId, lemmaDictionary.getIds(siteId, lemmas)));
+
+        ArrayList<Index> indexes = new ArrayList<>();
+        HashMap<Integer, Integer> frequencies = new HashMap<>();
+        InvertedIndex.Changes changes = new InvertedIndex.Changes();
+        for (Page page : savedPages) {
+            Map<String, Integer> ids = lemmaIds.get(page.getSite().getId());
+            changes.putPage(page.getSite(), page.getId(), page.getLength());
+            pages.get(page).forEach((lemma, positions) -> {
+                Integer lemmaId = ids.get(lemma);
+                indexes.add(createIndex(page, lemmaId, positions.length, PositionCodec.encode(positions)));
+                frequencies.merge(lemmaId, positions.length, Integer::sum);
+                changes.putLemma(page.getSite(), page.getId(), lemma, lemmaId, positions.length);
+            });
+        }
+        bulkIndexWriter.insertIndexes(indexes);
+        lemmaDictionary.addFrequencies(frequencies);
+        invertedIndex.applyAfterCommit(changes);
+    }
+
+    public void indexPage(Page page, HashMap<String, int[]> lemmasMap) {
+        LinkedHashMap<Page, HashMap<String, int[]>> pages = new LinkedHashMap<>();
+        pages.put(page, lemmasMap);
+        indexPages(pages);
+    }
+
+
+    // replaces a saved page with its new version by the difference of their lemmas: rows of lemmas that are gone are deleted,
+    // rows of new lemmas are inserted, changed rows are updated and the frequencies get only the differences of the ranks.
+    // All of it is done with batched statements in the caller's transaction
+    public void updatePage(Integer pageId, Page page, HashMap<String, int[]> lemmas) {
+        page.setId(pageId);
+        page.setLength(getLength(lemmas));
+        bulkIndexWriter.updatePage(page);
+
+        Site site = page.getSite();
+        Map<String, Integer> ids = lemmas.isEmpty() ? Map.of() : lemmaDictionary.getIds(site.getId(), lemmas.keySet());
+        HashMap<Integer, int[]> newPositions = new HashMap<>();
+        HashMap<Integer, String> lemmaTexts = new HashMap<>();
+        lemmas.forEach((lemma, positions) -> {
+            newPositions.put(ids.get(lemma), positions);
+            lemmaTexts.put(ids.get(lemma), lemma);
+        });
+
+        ArrayList<Index> changedIndexes = new ArrayList<>();
+        ArrayList<Integer> removedIndexes = new ArrayList<>();
+        HashMap<Integer, Integer> frequencies = new HashMap<>();
+        InvertedIndex.Changes changes = new InvertedIndex.Changes();
+        changes.putPage(site, pageId, page.getLength());
+        for (IndexRepository.Posting posting : indexRepository.findPostingsByPageId(pageId)) {
+            int oldRank = posting.getRank().intValue();
+            int[] positions = newPositions.remove(posting.getLemmaId());
+            if (positions == null) {
+                removedIndexes.add(posting.getId());
+                frequencies.merge(posting.getLemmaId(), -oldRank, Integer::sum);
+                changes.removeLemma(site, pageId, posting.getLemmaId());
+                continue;
+            }
+            byte[] encoded = PositionCodec.encode(positions);
+            if (positions.length != oldRank || !Arrays.equals(encoded, posting.getPositions())) {
+                Index index = createIndex(page, posting.getLemmaId(), positions.length, encoded);
+                index.setId(posting.getId());
+                changedIndexes.add(index);
+                frequencies.merge(posting.getLemmaId(), positions.length - oldRank, Integer::sum);
+                changes.putLemma(site, pageId, lemmaTexts.get(posting.getLemmaId()), posting.getLemmaId(), positions.length);
+            }
+        }
+
+        ArrayList<Index> newIndexes = new ArrayList<>();
+        newPositions.forEach((lemmaId, positions) -> {
+            newIndexes.add(createIndex(page, lemmaId, positions.length, PositionCodec.encode(positions)));
+            frequencies.merge(lemmaId, positions.length, Integer::sum);
+            changes.putLemma(site, pageId, lemmaTexts.get(lemmaId), lemmaId, positions.length);
+        });
+
+        bulkIndexWriter.deleteIndexes(removedIndexes);
+        bulkIndexWriter.updateIndexes(changedIndexes);
+        bulkIndexWriter.insertIndexes(newIndexes);
+        frequencies.values().removeIf(change -> change == 0);
+        lemmaDictionary.addFrequencies(frequencies);
+        invertedIndex.applyAfterCommit(changes);
+    }
+
+    // removes the page with its indexes and takes its lemmas away from the frequencies
+    public void removePage(Site site, Integer pageId) {
+        HashMap<Integer, Integer> frequencies = new HashMap<>();
+        InvertedIndex.Changes changes = new InvertedIndex.Changes();
+        changes.removePage(site, pageId);
+        indexRepository.findLemmaRanksByPageId(pageId).forEach(lemmaRank -> {
+            frequencies.merge(lemmaRank.getLemmaId(), -lemmaRank.getRank().intValue(), Integer::sum);
+            changes.removeLemma(site, pageId, lemmaRank.getLemmaId());
+        });
+        indexRepository.deleteByPageId(pageId);
+        pageContentRepository.deleteByPageId(pageId);
+        pageRepository.deletePageById(pageId);
+        lemmaDictionary.addFrequencies(frequencies);
+        invertedIndex.applyAfterCommit(changes);
+    }
+
+    // the html is read only on request, null if the page was saved without it
+    public String loadHtml(Integer pageId) {
+        return pageContentRepository.findById(pageId)
+                .map(content -> PageContentCodec.decompress(content.getHtml()))
+                .orElse(null);
+    }
+
+    // positions of the lemma's words on the page in ascending order, empty if the page doesn't have the lemma
+    public int[] getPositions(Integer pageId, Integer lemmaId) {
+        return PositionCodec.decode(indexRepository.findPositions(pageId, lemmaId));
+    }
+
+    public void updateValidators(Integer pageId, String etag, String lastModified) {
+        pageRepository.updateValidators(pageId, etag, lastModified);
+    }
+
+
+    public void savePageWithConnectionError(String path, Site site, int statusCode, String errorMessage, boolean stopped) {
+        Page page = new Page();
+        page.setSite(site);
+        page.setPath(path);
+        page.setCode(statusCode);
+        if (statusCode == 200 || statusCode == 0) {
+            page.setText(errorMessage);
+            site.setLastError(errorMessage);
+        } else {
+            page.setText("Error " + statusCode + " on the page");
+            String lastError = getStatusCodeMessage(statusCode);
+            site.setLastError(lastError);
+        }
+        if (stopped) {
+            page.setText("Индексация остановлена пользователем");
+            page.setCode(00);
+            site.setLastError("Индексация остановлена пользователем");
+        }
+        site.setStatusTime(LocalDateTime.now());
+        if (savePageToDatabase(page)) {
+            // error pages have no lemmas, but they are counted among the pages of the site
+            InvertedIndex.Changes changes = new InvertedIndex.Changes();
+            changes.putPage(site, page.getId(), 0);
+            invertedIndex.applyAfterCommit(changes);
+        }
+        siteRepository.save(site);
+    }
+
+    // html is null for pages that are saved without it
+    public Page createPage(String path, Site site, int statusCode, String title, String text, String html) {
+        Page page = new Page();
+        page.setSite(site);
+        page.setPath(path);
+        page.setCode(statusCode);
+        page.setTitle(title);
+        page.setText(text);
+        page.setCompressedHtml(html == null ? null : PageContentCodec.compress(html));
+        return page;
+    }
+
+    // the number of indexed words of the page
+    private static int getLength(HashMap<String, int[]> lemmas) {
+        int length = 0;
+        for (int[] positions : lemmas.values()) {
+            length += positions.length;
+        }
+        return length;
+    }
+
+    // the lemma is needed only for its id
+    private Index createIndex(Page page, Integer lemmaId, int rank, byte[] positions) {
+        Lemma lemma = new Lemma();
+        lemma.setId(lemmaId);
+        Index index = new Index();
+        index.setLemma(lemma);
+        index.setRank((float) rank);
+        index.setPositions(positions);
+        index.setPage(page);
+        return index;
+    }
+
+
+    private static String getStatusCodeMessage(int statuscode) {
+        switch (statuscode) {
+            case 400:
+                return "error 404: Bad Request";
+            case 401:
+                return "error 401: Unauthorized";
+            case 403:
+                return "error 403: Forbidden";
+            case 404:
+                return "error 404: Not found";
+            case 500:
+                return "error 500: Internal server error";
+            case 502:
+                return "error 502: Bad Gateway";
+            case 503:
+                return "error 503: Service unavailable";
+            case 504:
+                return "error 504: Gateway Timeout";
+        }
+        return "error " + statuscode + ": unknown error";
+    }
+
+}
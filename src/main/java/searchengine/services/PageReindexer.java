@@ -0,0 +1,125 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SitesList;
+import searchengine.model.Site;
+import searchengine.repositories.PageRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// reindexes single pages for /api/indexPage. Requests run on a bounded pool, so a flood of them is refused
+// instead of piling up threads. Requests for a url that is already waiting are merged with it,
+// a request for a url that is being reindexed runs once more after it, so the latest version of the page is indexed.
+// A saved page goes through the pipeline as a known page, so only the difference between its versions is written
+@Component
+public class PageReindexer {
+
+    // a reindex waits for its page not longer than this, the pipeline finishes it anyway
+    private static final long REINDEX_TIMEOUT_SECONDS = 60;
+
+    private final CrawlPipeline crawlPipeline;
+    private final PolitenessScheduler politenessScheduler;
+    private final PageRepository pageRepository;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, Request> requests = new ConcurrentHashMap<>();
+
+    public PageReindexer(CrawlPipeline crawlPipeline,
+                         PolitenessScheduler politenessScheduler,
+                         PageRepository pageRepository,
+                         SitesList settings) {
+        this.crawlPipeline = crawlPipeline;
+        this.politenessScheduler = politenessScheduler;
+        this.pageRepository = pageRepository;
+        this.executor = new ThreadPoolExecutor(settings.getReindexThreads(), settings.getReindexThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(settings.getReindexQueueCapacity()), runnable -> {
+            Thread thread = new Thread(runnable, "page-reindexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // false if the queue is full and the request is refused
+    public boolean submit(Site site, String canonicalUrl) {
+        Request created = new Request(site, canonicalUrl);
+        Request request = requests.compute(canonicalUrl, (url, current) -> {
+            if (current == null) {
+                return created;
+            }
+            if (current.started) {
+                current.again = true;
+            }
+            return current;
+        });
+        if (request != created) {
+            return true;
+        }
+        try {
+            executor.execute(() -> run(request));
+            return true;
+        } catch (RejectedExecutionException e) {
+            requests.remove(canonicalUrl, created);
+            return false;
+        }
+    }
+
+
+    private void run(Request request) {
+        while (true) {
+            requests.computeIfPresent(request.url, (url, current) -> {
+                current.started = true;
+                current.again = false;
+                return current;
+            });
+            try {
+                reindex(request);
+            } catch (Exception e) {
+                System.out.println("Ошибка при индексации страницы " + request.url + ": " + e.getMessage());
+            }
+            if (requests.computeIfPresent(request.url, (url, current) -> current.again ? current : null) == null) {
+                return;
+            }
+        }
+    }
+
+    private void reindex(Request request) throws Exception {
+        SiteCrawlContext context = new SiteCrawlContext(request.site, new UrlSeenSet(), false, crawlPipeline, politenessScheduler);
+        String path = context.getCanonicalizer().toPath(request.url);
+        pageRepository.findPageStateBySiteAndPath(request.site, path)
+                .ifPresent(page -> context.setKnownPages(Map.of(path, page)));
+
+        // the page goes through the crawl pipeline without following its links
+        crawlPipeline.register(context);
+        context.submit(request.url, 0);
+        try {
+            context.getCompletion().get(REINDEX_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            System.out.println("Страница " + request.url + " не проиндексирована за " + REINDEX_TIMEOUT_SECONDS + " секунд");
+        }
+    }
+
+
+    // started and again are changed only inside compute() of the requests map
+    private static class Request {
+        private final Site site;
+        private final String url;
+        private boolean started;
+        private boolean again;
+
+        Request(Site site, String url) {
+            this.site = site;
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+// releases crawl tasks so that every host gets requests not more often than its delay.
+// Waiting tasks lie in per-host priority queues, the only thread that waits is the dispatcher.
+// Several crawls of one host (a site crawl and page reindexes) share its delay, but each has its own queue and gate,
+// so a crawl is cancelled or throttled without touching the others.
+// A task that can't be taken now (the next stage is full) is put back and the host is tried again later,
+// so one busy stage never stops the dispatching of the other hosts
+@Component
+public class PolitenessScheduler {
+
+    private static final long DEFAULT_DELAY_MILLIS = 500;
+    private static final long GATE_RETRY_MILLIS = 20;
+    // refused tasks are retried with a growing pause up to this one
+    private static final long MAX_REFUSED_RETRY_MILLIS = 1000;
+
+    private final ConcurrentHashMap<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    private final DelayQueue<HostQueue> readyHosts = new DelayQueue<>();
+    // tasks with the same priority are released in the order they were submitted
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final Thread dispatcher;
+
+    public PolitenessScheduler() {
+        dispatcher = new Thread(this::dispatch, "politeness-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    public void setDelay(String host, long delayMillis) {
+        getHostQueue(host).delayMillis = delayMillis;
+    }
+
+    // while the gate is closed the crawl's tasks wait in the queue (used for the site's share of the fetch budget),
+    // the other crawls of the host go on
+    public void setGate(String host, Object crawl, BooleanSupplier gate) {
+        HostQueue hostQueue = getHostQueue(host);
+        synchronized (hostQueue) {
+            hostQueue.getCrawlQueue(crawl).gate = gate;
+        }
+    }
+
+    // the task will be run on the dispatcher thread, so it should only hand the work over without waiting
+    // and return false if it can't be taken now. Tasks of the host with the lowest priority value are released first
+    public void submit(String host, Object crawl, int priority, BooleanSupplier task) {
+        HostQueue hostQueue = getHostQueue(host);
+        synchronized (hostQueue) {
+            hostQueue.getCrawlQueue(crawl).tasks.add(new QueuedTask(priority, sequence.incrementAndGet(), task));
+            queueSize.incrementAndGet();
+            if (!hostQueue.scheduled) {
+                hostQueue.scheduled = true;
+                readyHosts.put(hostQueue);
+            }
+        }
+    }
+
+    // forgets the crawl with its gate, drops its waiting tasks and returns how many were dropped
+    public int cancel(String host, Object crawl) {
+        HostQueue hostQueue = getHostQueue(host);
+        synchronized (hostQueue) {
+            CrawlQueue crawlQueue = hostQueue.crawls.remove(crawl);
+            if (crawlQueue == null) {
+                return 0;
+            }
+            int dropped = crawlQueue.tasks.size();
+            queueSize.addAndGet(-dropped);
+            return dropped;
+        }
+    }
+
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.interrupt();
+    }
+
+    private HostQueue getHostQueue(String host) {
+        return hosts.computeIfAbsent(host, HostQueue::new);
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            HostQueue hostQueue;
+            try {
+                hostQueue = readyHosts.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            // the host stays scheduled while its task runs, it is put back into readyHosts only after that
+            CrawlQueue crawlQueue = null;
+            QueuedTask task;
+            boolean waiting = false;
+            synchronized (hostQueue) {
+                for (CrawlQueue queue : hostQueue.crawls.values()) {
+                    if (queue.tasks.isEmpty()) {
+                        continue;
+                    }
+                    waiting = true;
+                    if ((crawlQueue == null || queue.tasks.peek().compareTo(crawlQueue.tasks.peek()) < 0)
+                            && queue.gate.getAsBoolean()) {
+                        crawlQueue = queue;
+                    }
+                }
+                if (!waiting) {
+                    hostQueue.scheduled = false;
+                    continue;
+                }
+                if (crawlQueue == null) {
+                    hostQueue.nextFetchAt = System.currentTimeMillis() + GATE_RETRY_MILLIS;
+                    readyHosts.put(hostQueue);
+                    continue;
+                }
+                task = crawlQueue.tasks.poll();
+                queueSize.decrementAndGet();
+            }
+
+            boolean taken = true;
+            try {
+                taken = task.runnable.getAsBoolean();
+            } catch (Exception e) {
+                System.out.println("Ошибка при запуске задачи для " + hostQueue.host + ": " + e.getMessage());
+            }
+
+            synchronized (hostQueue) {
+                if (taken) {
+                    hostQueue.refusedRetryMillis = GATE_RETRY_MILLIS;
+                    hostQueue.nextFetchAt = System.currentTimeMillis() + hostQueue.delayMillis;
+                } else {
+                    // the task of a cancelled crawl is dropped
+                    if (hostQueue.crawls.containsValue(crawlQueue)) {
+                        crawlQueue.tasks.add(task);
+                        queueSize.incrementAndGet();
+                    }
+                    hostQueue.nextFetchAt = System.currentTimeMillis() + hostQueue.refusedRetryMillis;
+                    hostQueue.refusedRetryMillis = Math.min(hostQueue.refusedRetryMillis * 2, MAX_REFUSED_RETRY_MILLIS);
+                }
+                if (hostQueue.hasTasks()) {
+                    readyHosts.put(hostQueue);
+                } else {
+                    hostQueue.scheduled = false;
+                }
+            }
+        }
+    }
+
+
+    private static class HostQueue implements Delayed {
+        private final String host;
+        // guarded by the host queue
+        private final LinkedHashMap<Object, CrawlQueue> crawls = new LinkedHashMap<>();
+        private volatile long delayMillis = DEFAULT_DELAY_MILLIS;
+        private volatile long nextFetchAt;
+        private boolean scheduled;
+        private long refusedRetryMillis = GATE_RETRY_MILLIS;
+
+        HostQueue(String host) {
+            this.host = host;
+        }
+
+        CrawlQueue getCrawlQueue(Object crawl) {
+            return crawls.computeIfAbsent(crawl, key -> new CrawlQueue());
+        }
+
+        boolean hasTasks() {
+            return crawls.values().stream().anyMatch(crawlQueue -> !crawlQueue.tasks.isEmpty());
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextFetchAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static class CrawlQueue {
+        private final PriorityQueue<QueuedTask> tasks = new PriorityQueue<>();
+        private BooleanSupplier gate = () -> true;
+    }
+
+    private static class QueuedTask implements Comparable<QueuedTask> {
+        private final int priority;
+        private final long sequence;
+        private final BooleanSupplier runnable;
+
+        QueuedTask(int priority, long sequence, BooleanSupplier runnable) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            int result = Integer.compare(priority, other.priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
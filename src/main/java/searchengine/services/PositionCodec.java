@@ -0,0 +1,59 @@
+package searchengine.services;
+
+// positions of a lemma on a page as they are stored in the index table: the number of positions
+// and then the differences between neighbouring positions, every number as a varint of 7 bits per byte
+public final class PositionCodec {
+
+    private PositionCodec() {
+    }
+
+    // positions must be in ascending order
+    public static byte[] encode(int[] positions) {
+        byte[] buffer = new byte[5 * (positions.length + 1)];
+        int length = writeVarint(buffer, 0, positions.length);
+        int previous = 0;
+        for (int position : positions) {
+            length = writeVarint(buffer, length, position - previous);
+            previous = position;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+
+    public static int[] decode(byte[] encoded) {
+        if (encoded == null || encoded.length == 0) {
+            return new int[0];
+        }
+        int[] offset = {0};
+        int[] positions = new int[readVarint(encoded, offset)];
+        int position = 0;
+        for (int i = 0; i < positions.length; i++) {
+            position += readVarint(encoded, offset);
+            positions[i] = position;
+        }
+        return positions;
+    }
+
+    static int writeVarint(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    // offset[0] is moved past the number
+    static int readVarint(byte[] buffer, int[] offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[offset[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,516 @@
+package searchengine.services;
+
+import java.util.Arrays;
+
+// pages of one lemma in ascending order with the number of the lemma's occurrences on each page.
+// Full blocks of BLOCK_SIZE postings are compressed: the differences between page ids and the frequencies
+// as varints. The last page of every block is kept apart as a skip pointer, so a cursor jumps over blocks
+// without decoding them. Page ids come from a sequence, so a new page is almost always appended
+// to the uncompressed tail, which is compressed when it is full
+public class PostingList {
+
+    static final int BLOCK_SIZE = 128;
+
+    // compressed blocks and the last page of each of them
+    private byte[][] blocks = new byte[0][];
+    private int[] blockSizes = new int[0];
+    private int[] lastPages = new int[0];
+    private int blockCount;
+    // postings after the last block
+    private int[] tailPages = new int[4];
+    private int[] tailFrequencies = new int[4];
+    private int tailSize;
+    private int size;
+    // not less than any frequency in the list, removals don't lower it
+    private int maxFrequency;
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxFrequency() {
+        return maxFrequency;
+    }
+
+    // adds the page or replaces its frequency
+    public void put(int page, int frequency) {
+        maxFrequency = Math.max(maxFrequency, frequency);
+        if (tailSize > 0 ? page > tailPages[tailSize - 1] : blockCount == 0 || page > lastPages[blockCount - 1]) {
+            appendToTail(page, frequency);
+            return;
+        }
+        int block = findBlock(page);
+        if (block == blockCount) {
+            putToTail(page, frequency);
+            return;
+        }
+        int[] pages = new int[blockSizes[block] + 1];
+        int[] frequencies = new int[blockSizes[block] + 1];
+        decode(blocks[block], blockSizes[block], pages, frequencies);
+        int i = find(pages, blockSizes[block], page);
+        if (i >= 0) {
+            frequencies[i] = frequency;
+            blocks[block] = encode(pages, frequencies, 0, blockSizes[block]);
+            return;
+        }
+        int position = -i - 1;
+        System.arraycopy(pages, position, pages, position + 1, blockSizes[block] - position);
+        System.arraycopy(frequencies, position, frequencies, position + 1, blockSizes[block] - position);
+        pages[position] = page;
+        frequencies[position] = frequency;
+        size++;
+        replaceBlock(block, pages, frequencies, blockSizes[block] + 1);
+    }
+
+    public void remove(int page) {
+        int block = findBlock(page);
+        if (block == blockCount) {
+            int i = find(tailPages, tailSize, page);
+            if (i >= 0) {
+                System.arraycopy(tailPages, i + 1, tailPages, i, tailSize - i - 1);
+                System.arraycopy(tailFrequencies, i + 1, tailFrequencies, i, tailSize - i - 1);
+                tailSize--;
+                size--;
+            }
+            return;
+        }
+        int[] pages = new int[blockSizes[block]];
+        int[] frequencies = new int[blockSizes[block]];
+        decode(blocks[block], blockSizes[block], pages, frequencies);
+        int i = find(pages, blockSizes[block], page);
+        if (i < 0) {
+            return;
+        }
+        System.arraycopy(pages, i + 1, pages, i, blockSizes[block] - i - 1);
+        System.arraycopy(frequencies, i + 1, frequencies, i, blockSizes[block] - i - 1);
+        size--;
+        replaceBlock(block, pages, frequencies, blockSizes[block] - 1);
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+
+    // pages that are in all the lists. The shortest list gives the candidates and the other lists
+    // are moved straight to them, so long lists of common lemmas are mostly skipped block by block.
+    // The frequencies are given to the visitor in the order of the lists
+    public static void intersect(PostingList[] lists, Visitor visitor) {
+        if (lists.length == 0) {
+            return;
+        }
+        Cursor[] cursors = new Cursor[lists.length];
+        Integer[] order = new Integer[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            if (lists[i].size == 0) {
+                return;
+            }
+            cursors[i] = lists[i].cursor();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(lists[a].size, lists[b].size));
+        int[] frequencies = new int[lists.length];
+        Cursor first = cursors[order[0]];
+        if (!first.next()) {
+            return;
+        }
+        int candidate = first.page();
+        int matched = 1;
+        int i = 1;
+        while (true) {
+            if (matched == lists.length) {
+                for (int j = 0; j < lists.length; j++) {
+                    frequencies[j] = cursors[j].frequency();
+                }
+                visitor.visit(candidate, frequencies);
+                if (!first.next()) {
+                    return;
+                }
+                candidate = first.page();
+                matched = 1;
+                i = 1;
+                continue;
+            }
+            Cursor cursor = cursors[order[i]];
+            if (!cursor.advance(candidate)) {
+                return;
+            }
+            if (cursor.page() == candidate) {
+                matched++;
+                i = i + 1 == lists.length ? 0 : i + 1;
+                continue;
+            }
+            // the cursor went past the candidate: its page is the new candidate, the other lists must reach it
+            candidate = cursor.page();
+            matched = 1;
+            i = i + 1 == lists.length ? 0 : i + 1;
+        }
+    }
+
+    // pages that are in any of the lists, a list without the page gives it frequency 0
+    public static void union(PostingList[] lists, Visitor visitor) {
+        Cursor[] cursors = new Cursor[lists.length];
+        boolean[] active = new boolean[lists.length];
+        int activeCount = 0;
+        for (int i = 0; i < lists.length; i++) {
+            cursors[i] = lists[i].cursor();
+            active[i] = cursors[i].next();
+            activeCount += active[i] ? 1 : 0;
+        }
+        int[] frequencies = new int[lists.length];
+        while (activeCount > 0) {
+            int page = Integer.MAX_VALUE;
+            for (int i = 0; i < lists.length; i++) {
+                if (active[i]) {
+                    page = Math.min(page, cursors[i].page());
+                }
+            }
+            for (int i = 0; i < lists.length; i++) {
+                frequencies[i] = 0;
+                if (active[i] && cursors[i].page() == page) {
+                    frequencies[i] = cursors[i].frequency();
+                    active[i] = cursors[i].next();
+                    activeCount -= active[i] ? 0 : 1;
+                }
+            }
+            visitor.visit(page, frequencies);
+        }
+    }
+
+    // MaxScore: the best pages that are in all the lists by the sum of their scores, every list has an upper bound of its scores.
+    // Lists are ordered by their bounds, the lists with the lowest bounds whose sum can't reach the collector's threshold
+    // are non-essential: candidates are the common pages of the essential lists only, and a non-essential list
+    // is moved to a candidate only while the candidate can still reach the threshold.
+    // The lists are split again every time the threshold rises
+    public static void maxScore(PostingList[] lists, double[] bounds, Scorer scorer, Collector collector) {
+        int n = lists.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(bounds[a], bounds[b]));
+        // the sum of the bounds of the first k lists in the order
+        double[] boundSums = new double[n + 1];
+        Cursor[] cursors = new Cursor[n];
+        for (int k = 0; k < n; k++) {
+            boundSums[k + 1] = boundSums[k] + bounds[order[k]];
+            cursors[k] = lists[order[k]].cursor();
+            if (!cursors[k].next()) {
+                return;
+            }
+        }
+
+        int nonEssential = 0;
+        while (true) {
+            double threshold = collector.getThreshold();
+            while (nonEssential < n && boundSums[nonEssential + 1] < threshold) {
+                nonEssential++;
+            }
+            if (nonEssential == n) {
+                return;
+            }
+
+            int candidate = alignEssential(cursors, nonEssential);
+            if (candidate < 0) {
+                return;
+            }
+            double score = 0;
+            for (int k = nonEssential; k < n; k++) {
+                score += scorer.score(order[k], candidate, cursors[k].frequency());
+            }
+            boolean collected = true;
+            for (int k = nonEssential - 1; k >= 0; k--) {
+                if (score + boundSums[k + 1] < threshold) {
+                    collected = false;
+                    break;
+                }
+                if (!cursors[k].advance(candidate)) {
+                    return;
+                }
+                if (cursors[k].page() != candidate) {
+                    collected = false;
+                    break;
+                }
+                score += scorer.score(order[k], candidate, cursors[k].frequency());
+            }
+            if (collected) {
+                collector.collect(candidate, score);
+            }
+
+            // the essential lists go past the candidate
+            for (int k = nonEssential; k < n; k++) {
+                if (!cursors[k].next()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public interface Visitor {
+        // the array is reused for the next page
+        void visit(int page, int[] frequencies);
+    }
+
+    public interface Scorer {
+        // the score of the page from the list with the given index
+        double score(int list, int page, int frequency);
+    }
+
+    public interface Collector {
+        // a page with a lower score won't be collected
+        double getThreshold();
+
+        void collect(int page, double score);
+    }
+
+    // moves the essential lists to their next common page, -1 if there is none
+    private static int alignEssential(Cursor[] cursors, int from) {
+        int candidate = cursors[from].page();
+        int matched = 1;
+        int k = from;
+        while (matched < cursors.length - from) {
+            k = k + 1 == cursors.length ? from : k + 1;
+            if (!cursors[k].advance(candidate)) {
+                return -1;
+            }
+            if (cursors[k].page() == candidate) {
+                matched++;
+            } else {
+                candidate = cursors[k].page();
+                matched = 1;
+            }
+        }
+        return candidate;
+    }
+
+
+    // reads the list in ascending order of pages. It must not be used after the list is changed
+    public class Cursor {
+        // the decoded current block
+        private final int[] pages = new int[BLOCK_SIZE * 2];
+        private final int[] frequencies = new int[BLOCK_SIZE * 2];
+        private int[] blockPages = pages;
+        private int[] blockFrequencies = frequencies;
+        private int blockLength;
+        // blockCount stands for the tail
+        private int block = -1;
+        private int position = -1;
+
+        public int page() {
+            return blockPages[position];
+        }
+
+        public int frequency() {
+            return blockFrequencies[position];
+        }
+
+        public boolean next() {
+            if (block >= 0 && position + 1 < blockLength) {
+                position++;
+                return true;
+            }
+            while (block < blockCount) {
+                load(block + 1);
+                if (blockLength > 0) {
+                    position = 0;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // moves to the first page that is not less than the target, false if there is no such page
+        public boolean advance(int target) {
+            if (block >= 0 && position >= 0 && position < blockLength && blockPages[position] >= target) {
+                return true;
+            }
+            int targetBlock = block < 0 ? 0 : block;
+            if (targetBlock < blockCount && lastPages[targetBlock] < target) {
+                targetBlock = gallopBlocks(targetBlock + 1, target);
+            }
+            if (targetBlock != block) {
+                load(targetBlock);
+                position = 0;
+            }
+            if (blockLength == 0 || blockPages[blockLength - 1] < target) {
+                position = blockLength;
+                return false;
+            }
+            position = gallop(blockPages, Math.max(position, 0), blockLength, target);
+            return true;
+        }
+
+        private void load(int newBlock) {
+            block = newBlock;
+            if (newBlock == blockCount) {
+                blockPages = tailPages;
+                blockFrequencies = tailFrequencies;
+                blockLength = tailSize;
+            } else {
+                blockPages = pages;
+                blockFrequencies = frequencies;
+                blockLength = blockSizes[newBlock];
+                decode(blocks[newBlock], blockLength, pages, frequencies);
+            }
+        }
+
+        // the first block from the given one with the last page not less than the target, or the tail
+        private int gallopBlocks(int from, int target) {
+            int low = from;
+            int step = 1;
+            while (low + step < blockCount && lastPages[low + step] < target) {
+                low += step;
+                step <<= 1;
+            }
+            int high = Math.min(low + step, blockCount);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (lastPages[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+
+    // the first index from the given one with the value not less than the target; the last value must not be less
+    private static int gallop(int[] values, int from, int length, int target) {
+        int low = from;
+        int step = 1;
+        while (low + step < length && values[low + step] < target) {
+            low += step;
+            step <<= 1;
+        }
+        int high = Math.min(low + step, length - 1);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // the first block whose last page is not less than the page, blockCount for the tail
+    private int findBlock(int page) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lastPages[middle] < page) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // index of the page, or -(insertion point) - 1 like Arrays.binarySearch
+    private static int find(int[] pages, int length, int page) {
+        return Arrays.binarySearch(pages, 0, length, page);
+    }
+
+    private void appendToTail(int page, int frequency) {
+        insertToTail(tailSize, page, frequency);
+    }
+
+    private void putToTail(int page, int frequency) {
+        int i = find(tailPages, tailSize, page);
+        if (i >= 0) {
+            tailFrequencies[i] = frequency;
+            return;
+        }
+        insertToTail(-i - 1, page, frequency);
+    }
+
+    // the tail is compressed into a new block as soon as it is full
+    private void insertToTail(int position, int page, int frequency) {
+        if (tailSize == tailPages.length) {
+            int capacity = Math.min(BLOCK_SIZE, tailPages.length * 2);
+            tailPages = Arrays.copyOf(tailPages, capacity);
+            tailFrequencies = Arrays.copyOf(tailFrequencies, capacity);
+        }
+        System.arraycopy(tailPages, position, tailPages, position + 1, tailSize - position);
+        System.arraycopy(tailFrequencies, position, tailFrequencies, position + 1, tailSize - position);
+        tailPages[position] = page;
+        tailFrequencies[position] = frequency;
+        tailSize++;
+        size++;
+        if (tailSize == BLOCK_SIZE) {
+            insertBlock(blockCount, encode(tailPages, tailFrequencies, 0, tailSize), tailSize, tailPages[tailSize - 1]);
+            tailSize = 0;
+        }
+    }
+
+    // a changed block is written back, an empty one is dropped and a block of two full blocks is split
+    private void replaceBlock(int block, int[] pages, int[] frequencies, int length) {
+        if (length == 0) {
+            System.arraycopy(blocks, block + 1, blocks, block, blockCount - block - 1);
+            System.arraycopy(blockSizes, block + 1, blockSizes, block, blockCount - block - 1);
+            System.arraycopy(lastPages, block + 1, lastPages, block, blockCount - block - 1);
+            blockCount--;
+            blocks[blockCount] = null;
+            return;
+        }
+        if (length > BLOCK_SIZE * 2 - 1) {
+            int half = length / 2;
+            blocks[block] = encode(pages, frequencies, 0, half);
+            blockSizes[block] = half;
+            lastPages[block] = pages[half - 1];
+            insertBlock(block + 1, encode(pages, frequencies, half, length), length - half, pages[length - 1]);
+            return;
+        }
+        blocks[block] = encode(pages, frequencies, 0, length);
+        blockSizes[block] = length;
+        lastPages[block] = pages[length - 1];
+    }
+
+    private void insertBlock(int block, byte[] encoded, int length, int lastPage) {
+        if (blockCount == blocks.length) {
+            int capacity = blocks.length + (blocks.length >> 1) + 1;
+            blocks = Arrays.copyOf(blocks, capacity);
+            blockSizes = Arrays.copyOf(blockSizes, capacity);
+            lastPages = Arrays.copyOf(lastPages, capacity);
+        }
+        System.arraycopy(blocks, block, blocks, block + 1, blockCount - block);
+        System.arraycopy(blockSizes, block, blockSizes, block + 1, blockCount - block);
+        System.arraycopy(lastPages, block, lastPages, block + 1, blockCount - block);
+        blocks[block] = encoded;
+        blockSizes[block] = length;
+        lastPages[block] = lastPage;
+        blockCount++;
+    }
+
+    // the first page, the differences of the next pages, and then the frequencies, all as varints
+    private static byte[] encode(int[] pages, int[] frequencies, int from, int to) {
+        byte[] buffer = new byte[10 * (to - from)];
+        int length = 0;
+        int previous = 0;
+        for (int i = from; i < to; i++) {
+            length = PositionCodec.writeVarint(buffer, length, pages[i] - previous);
+            previous = pages[i];
+        }
+        for (int i = from; i < to; i++) {
+            length = PositionCodec.writeVarint(buffer, length, frequencies[i]);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static void decode(byte[] encoded, int length, int[] pages, int[] frequencies) {
+        int[] offset = {0};
+        int page = 0;
+        for (int i = 0; i < length; i++) {
+            page += PositionCodec.readVarint(encoded, offset);
+            pages[i] = page;
+        }
+        for (int i = 0; i < length; i++) {
+            frequencies[i] = PositionCodec.readVarint(encoded, offset);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package searchengine.services;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// rules from the site's robots.txt that apply to our crawler (the "User-agent: *" group) and its sitemaps
+public class RobotsTxt {
+
+    private long crawlDelayMillis;
+    private final List<Rule> rules = new ArrayList<>();
+    private final List<String> sitemaps = new ArrayList<>();
+
+    public long getCrawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    // the longest matching rule wins, Allow wins if the rules are of the same length
+    public boolean isAllowed(String path) {
+        Rule bestRule = null;
+        for (Rule rule : rules) {
+            if (rule.matches(path) && (bestRule == null
+                    || rule.pattern.length() > bestRule.pattern.length()
+                    || (rule.pattern.length() == bestRule.pattern.length() && rule.allow))) {
+                bestRule = rule;
+            }
+        }
+        return bestRule == null || bestRule.allow;
+    }
+
+    // if there is no robots.txt or it can't be loaded, nothing is restricted
+    public static RobotsTxt load(String siteUrl) {
+        try {
+            Connection.Response response = Jsoup.connect(siteUrl + "/robots.txt")
+                    .userAgent(CrawlPipeline.USER_AGENT)
+                    .ignoreContentType(true)
+                    .timeout(5000)
+                    .execute();
+            if (response.statusCode() >= 400) {
+                return new RobotsTxt();
+            }
+            Charset charset = response.charset() != null ? Charset.forName(response.charset()) : StandardCharsets.UTF_8;
+            try (Reader reader = new InputStreamReader(response.bodyStream(), charset)) {
+                return parse(reader);
+            }
+        } catch (Exception e) {
+            return new RobotsTxt();
+        }
+    }
+
+    public static RobotsTxt parse(String content) throws IOException {
+        return parse(new StringReader(content));
+    }
+
+    // the file is read line by line, without keeping it in memory
+    public static RobotsTxt parse(Reader content) throws IOException {
+        RobotsTxt robotsTxt = new RobotsTxt();
+        BufferedReader reader = new BufferedReader(content);
+        boolean ourGroup = false;
+        boolean readingAgents = false;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase();
+            String value = line.substring(colon + 1).trim();
+
+            // several User-agent lines in a row belong to the same group
+            if (field.equals("user-agent")) {
+                ourGroup = (readingAgents && ourGroup) || value.equals("*");
+                readingAgents = true;
+                continue;
+            }
+            readingAgents = false;
+
+            // sitemaps don't belong to any group
+            if (field.equals("sitemap")) {
+                if (!value.isEmpty()) {
+                    robotsTxt.sitemaps.add(value);
+                }
+                continue;
+            }
+            if (!ourGroup) {
+                continue;
+            }
+
+            switch (field) {
+                case "crawl-delay":
+                    try {
+                        robotsTxt.crawlDelayMillis = (long) (Double.parseDouble(value) * 1000);
+                    } catch (NumberFormatException ignored) {
+                    }
+                    break;
+                // an empty Disallow allows everything
+                case "disallow":
+                    if (!value.isEmpty()) {
+                        robotsTxt.rules.add(new Rule(value, false));
+                    }
+                    break;
+                case "allow":
+                    if (!value.isEmpty()) {
+                        robotsTxt.rules.add(new Rule(value, true));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return robotsTxt;
+    }
+
+
+    // path prefix where "*" is any sequence of characters and "$" at the end is the end of the path
+    private static class Rule {
+        private final String pattern;
+        private final boolean allow;
+        private final boolean anchored;
+        private final String[] parts;
+
+        Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+            this.anchored = pattern.endsWith("$");
+            this.parts = (anchored ? pattern.substring(0, pattern.length() - 1) : pattern).split("\\*", -1);
+        }
+
+        boolean matches(String path) {
+            if (!path.startsWith(parts[0])) {
+                return false;
+            }
+            int position = parts[0].length();
+            for (int i = 1; i < parts.length; i++) {
+                // the last part of an anchored pattern has to be at the end of the path
+                if (anchored && i == parts.length - 1) {
+                    return path.length() - parts[i].length() >= position && path.endsWith(parts[i]);
+                }
+                int found = path.indexOf(parts[i], position);
+                if (found < 0) {
+                    return false;
+                }
+                position = found + parts[i].length();
+            }
+            return !anchored || parts.length > 1 || position == path.length();
+        }
+    }
+}
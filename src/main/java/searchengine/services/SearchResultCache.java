@@ -0,0 +1,179 @@
+package searchengine.services;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.SitesList;
+import searchengine.dto.statistics.PagesToResponse;
+import searchengine.dto.statistics.SearchCacheStatistics;
+import searchengine.dto.statistics.SearchResponse;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// responses of recent searches by their query lemmas, site and window of results.
+// A response is valid only for the version of the index it was found in, all older responses are dropped
+// when a response of a newer version is saved. The cache is bounded by the approximate size of the responses
+// in memory, the least recently used ones are evicted. Identical searches at the same time are run once,
+// the other callers wait for its response
+@Component
+public class SearchResultCache {
+
+    private final long capacity;
+    private final InvertedIndex invertedIndex;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<Key, CompletableFuture<SearchResponse>> running = new ConcurrentHashMap<>();
+    // the version of the saved responses and their summed up size
+    private long entriesVersion;
+    private long size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sharedSearches = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public SearchResultCache(SitesList settings, InvertedIndex invertedIndex) {
+        this.capacity = settings.getSearchCacheMegabytes() * 1024L * 1024L;
+        this.invertedIndex = invertedIndex;
+    }
+
+    // lemmas must be sorted, so the same query with the words in another order finds the same response
+    public SearchResponse get(List<String> lemmas, String site, int offset, int limit, Supplier<SearchResponse> search) {
+        Key key = new Key(lemmas, site == null ? "" : site, offset, limit, invertedIndex.getVersion());
+        SearchResponse response = find(key);
+        if (response != null) {
+            hits.increment();
+            return copy(response);
+        }
+        misses.increment();
+
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        CompletableFuture<SearchResponse> runningSearch = running.putIfAbsent(key, future);
+        if (runningSearch != null) {
+            sharedSearches.increment();
+            try {
+                return copy(runningSearch.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        // the response is saved before the search is removed from the running ones, so nobody runs it again in between
+        try {
+            response = search.get();
+            // pages committed during the search may be missing in the response
+            if (key.version == invertedIndex.getVersion()) {
+                put(key, response);
+            }
+            future.complete(response);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            running.remove(key, future);
+        }
+        return copy(response);
+    }
+
+    public SearchCacheStatistics getStatistics() {
+        SearchCacheStatistics statistics = new SearchCacheStatistics();
+        synchronized (this) {
+            statistics.setEntries(entries.size());
+            statistics.setSizeBytes(size);
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        statistics.setCapacityBytes(capacity);
+        statistics.setHits(hitCount);
+        statistics.setMisses(missCount);
+        statistics.setSharedSearches(sharedSearches.sum());
+        statistics.setEvictions(evictions.sum());
+        statistics.setInvalidations(invalidations.sum());
+        statistics.setHitRate(hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount));
+        return statistics;
+    }
+
+
+    private synchronized SearchResponse find(Key key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.response;
+    }
+
+    private synchronized void put(Key key, SearchResponse response) {
+        if (key.version < entriesVersion) {
+            return;
+        }
+        if (key.version > entriesVersion) {
+            invalidations.add(entries.size());
+            entries.clear();
+            size = 0;
+            entriesVersion = key.version;
+        }
+        long weight = weigh(key, response);
+        if (weight > capacity || entries.containsKey(key)) {
+            return;
+        }
+        entries.put(key, new Entry(response, weight));
+        size += weight;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > capacity) {
+            size -= eldest.next().weight;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    // callers may change the response they got, the list of pages is shared
+    private static SearchResponse copy(SearchResponse response) {
+        SearchResponse copy = new SearchResponse();
+        copy.setResult(response.getResult());
+        copy.setError(response.getError());
+        copy.setCount(response.getCount());
+        copy.setData(response.getData());
+        return copy;
+    }
+
+    // approximate number of bytes: two bytes per char of the strings and the headers of the objects
+    private static long weigh(Key key, SearchResponse response) {
+        long weight = 128;
+        for (String lemma : key.lemmas) {
+            weight += 48 + 2L * lemma.length();
+        }
+        weight += 2L * key.site.length();
+        if (response.getData() != null) {
+            for (PagesToResponse page : response.getData()) {
+                weight += 96 + 5 * 40;
+                weight += 2L * (length(page.getSite()) + length(page.getSitename()) + length(page.getUri())
+                        + length(page.getTitle()) + length(page.getSnippet()));
+            }
+        }
+        return weight;
+    }
+
+    private static int length(String string) {
+        return string == null ? 0 : string.length();
+    }
+
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class Key {
+        private final List<String> lemmas;
+        private final String site;
+        private final int offset;
+        private final int limit;
+        private final long version;
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+        private final SearchResponse response;
+        private final long weight;
+    }
+}
@@ -1,20 +1,13 @@
 package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.stereotype.Service;
 import searchengine.dto.statistics.PagesToResponse;
 import searchengine.dto.statistics.PartialView;
 import searchengine.dto.statistics.SearchResponse;
-import searchengine.model.Lemma;
 import searchengine.model.Page;
-import searchengine.model.Site;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
-import searchengine.repositories.SiteRepository;
 
 import java.text.BreakIterator;
 import java.util.*;
@@ -25,10 +18,9 @@ import java.util.stream.Collectors;
 public class SearchServiceImpl implements SearchService {
 
     private final PageRepository pageRepository;
-    private final SiteRepository siteRepository;
     private final LemmaService lemmaService;
-    private final IndexRepository indexRepository;
-    private final LemmaRepository lemmaRepository;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
 
 
     // this value is the frequency of the lemma on all pages to the total number of lemmas. We ignore popular lemmas
@@ -36,185 +28,115 @@ public class SearchServiceImpl implements SearchService {
     int snippetLengthLimit = 180;
 
 
+    // repeated searches are answered from the cache until the index changes
     @Override
     public SearchResponse search(String query, String site, Integer offset, Integer limit) {
-        SearchResponse response = new SearchResponse();
-        long pages = pageRepository.count();
+        int window = limit != null ? Math.max(0, limit) : 20;
+        int start = offset != null ? Math.max(0, offset) : 0;
 
-        // breaking the query into words, convert them into objects Lemma
+        // breaking the query into words, convert them into lemmas
         Set<String> querySet = lemmaService.createLemma(query).keySet();
-        HashMap<Lemma, Double> lemmasWithPopularity = createLemmasWithPopularity(querySet, pages, site);
+        List<String> queryLemmas = querySet.stream().sorted().collect(Collectors.toList());
+        return searchResultCache.get(queryLemmas, site, start, window, () -> search(querySet, site, start, window));
+    }
+
+    // lemmas are intersected in the in-memory index, the database is read only for the pages of the returned window
+    private SearchResponse search(Set<String> querySet, String site, int offset, int limit) {
+        SearchResponse response = new SearchResponse();
+        List<InvertedIndex.SiteIndex> searchedSites = invertedIndex.getSearchedSites(site);
+        int pages = invertedIndex.getPageCount(searchedSites);
+        HashMap<String, Double> lemmasWithPopularity = createLemmasWithPopularity(querySet, pages, searchedSites);
 
-        // sort the map by lemma's popularity
-        LinkedHashMap<Lemma, Double> sortedLemmaWithPopularity = lemmasWithPopularity.entrySet()
+        // sort the lemmas by popularity
+        ArrayList<String> lemmas = lemmasWithPopularity.entrySet()
                 .stream()
                 .sorted(Map.Entry.comparingByValue())
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
-
-        ArrayList<Page> relevantPages = findRelevantPages(sortedLemmaWithPopularity);
-        if (relevantPages.isEmpty()) {
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toCollection(ArrayList::new));
+
+        // only the pages up to the end of the requested window are ranked and kept
+        InvertedIndex.TopPages top = invertedIndex.findPages(searchedSites, lemmas, (int) Math.min(Integer.MAX_VALUE, (long) offset + limit));
+        if (top.getTotal() == 0) {
             response.setResult(true);
             response.setCount(0);
             response.setData(new ArrayList<PagesToResponse>());
             return response;
         }
 
-        // calculating relevance for the each page
-        ArrayList<Lemma> lemmas = new ArrayList<>(sortedLemmaWithPopularity.keySet());
-        LinkedHashMap<Page, Double> pagesWithRelewanth = getRelevanthToPages(relevantPages, lemmas);
-        LinkedHashMap<Page, Double> pagesWithSortRelevance = pagesWithRelewanth.entrySet()
-                .stream()
-                .sorted(Map.Entry.<Page, Double>comparingByValue().reversed())
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
-
-        fillTheResponse(pagesWithSortRelevance, response, lemmas, limit, offset);
+        fillTheResponse(top, response, lemmas, limit, offset);
         return response;
     }
 
 
-    // breaking the query into words ignoring the most popular lemmas.
-    // returns a HashMap with Lemma as the key and popularity percent as the value.
-    private HashMap<Lemma, Double> createLemmasWithPopularity(Set<String> querySet, long pages, String siteStringFromQuery) {
-        HashMap<Lemma, Double> lemmasWithPopularity = new HashMap<>();
+    // breaking the query into words ignoring the most popular lemmas and the lemmas that no page has.
+    // returns a HashMap with the lemma as the key and popularity percent as the value
+    private HashMap<String, Double> createLemmasWithPopularity(Set<String> querySet, int pages,
+                                                               List<InvertedIndex.SiteIndex> searchedSites) {
+        HashMap<String, Double> lemmasWithPopularity = new HashMap<>();
         querySet.forEach(word -> {
-            Lemma lemma = new Lemma();
-
-            // if searching within the site
-            if (siteStringFromQuery != null && !siteStringFromQuery.isBlank()) {
-                Optional<Site> site = siteRepository.findByUrl(siteStringFromQuery);
-                Optional<Lemma> optionalLemma = site.flatMap(siteFromRepo -> lemmaRepository.findLemmaByLemmaAndSite(word, siteFromRepo));
-                if (optionalLemma.isPresent()) {
-                    lemma = optionalLemma.get();
-                } else return;
-            }
-
-            // if searching within all site
-            else {
-                Optional<Lemma> optional = lemmaRepository.findLemmaByLemma(word);
-                if (optional.isPresent()) {
-                    lemma = optional.get();
-                } else return;
-            }
+            int lemmaOnPages = invertedIndex.getDocumentFrequency(searchedSites, word);
+            if (lemmaOnPages == 0) return;
 
             // removing popular lemma
-            long lemmaOnPages = indexRepository.countPagesByLemma(lemma);
             double lemmaPopularity = (double) pages / (double) lemmaOnPages;
             if (lemmaPopularity < popularLemma) {
-                lemmasWithPopularity.put(lemma, lemmaPopularity);
+                lemmasWithPopularity.put(word, lemmaPopularity);
             }
         });
         return lemmasWithPopularity;
     }
 
-
-    private ArrayList<Page> findRelevantPages(LinkedHashMap<Lemma, Double> sortedMap) {
-        ArrayList<Page> pages = new ArrayList<>();
-        List<Lemma> keysList = new ArrayList<>(sortedMap.keySet());
-
-        for (Lemma lemma : keysList) {
-            // get pagesList for the first or not first lemma
-            if (pages.isEmpty()) {
-                List<Page> pageList = indexRepository.findDistinctPagesByLemma(lemma);
-                pages = pageList.isEmpty() ? new ArrayList<>() : (ArrayList<Page>) pageList;
-            } else {
-                Optional<List<Page>> newPageList = indexRepository.findDistinctPageByLemmaAndPageIn(lemma, pages);
-                if (newPageList.isPresent() && !newPageList.get().isEmpty()) pages.addAll(newPageList.get());
-            }
-            if (pages.isEmpty()) return pages;
-        }
-        return pages;
-    }
-    
-    private LinkedHashMap<Page, Double> getRelevanthToPages(ArrayList<Page> relevantPages, ArrayList<Lemma> lemmasList) {
-        LinkedHashMap<Page, Integer> pagesWithAbsoluteRelevanth = new LinkedHashMap<>();
-        long maxRelevance = 0;
-        
-        for (Page page : relevantPages) {
-            ArrayList<String> lemmasOnThePage = lemmaService.getLemmasListFromPage(page);
-            int absoluteRelevance = getLemmasCount(lemmasOnThePage, lemmasList);
-            maxRelevance = Math.max(absoluteRelevance, maxRelevance);
-            pagesWithAbsoluteRelevanth.put(page, absoluteRelevance);
-        }
-        
-        LinkedHashMap<Page, Double> pagesWithRelevanth = new LinkedHashMap<>();
-        for (Map.Entry<Page, Integer> entry : pagesWithAbsoluteRelevanth.entrySet()) {
-            double relativeRelevance = (double) entry.getValue() / (double) maxRelevance;
-            pagesWithRelevanth.put(entry.getKey(), relativeRelevance);
-        }
-        return pagesWithRelevanth;
-    }
-
-
-    private int getLemmasCount(ArrayList<String> lemmasOnThePage, ArrayList<Lemma> lemmasList) {
-        int relevance = 0;
-        for (Lemma lemma : lemmasList) {
-            String lemmaWord = lemma.getLemma();
-            for (String wordOnPage : lemmasOnThePage) {
-                if (wordOnPage.equals(lemmaWord)) {
-                    relevance++;
-                }
-            }
-        }
-        return relevance;
-    }
-
-    private SearchResponse fillTheResponse(LinkedHashMap<Page, Double> pagesWithRelewanth,
+    // only the pages of the requested window are loaded and get titles and snippets
+    private SearchResponse fillTheResponse(InvertedIndex.TopPages top,
                                            SearchResponse response,
-                                           ArrayList<Lemma> lemmas,
-                                           Integer limit,
-                                           Integer offset
+                                           ArrayList<String> lemmas,
+                                           int limit,
+                                           int offset
     ) {
-        limit = limit != null ? limit : 20;
+        List<InvertedIndex.Match> matches = top.getMatches();
+        int from = Math.min(offset, matches.size());
+        int to = Math.min(matches.size(), from + limit);
         response.setResult(true);
-        response.setCount(pagesWithRelewanth.size());
-        List<PagesToResponse> data = new ArrayList<>();
+        response.setCount(top.getTotal());
+
+        // the most relevant page is always kept, the relevance is given relative to it
+        double maxRelevance = matches.get(0).getRelevance();
+        List<InvertedIndex.Match> window = matches.subList(from, to);
+        Map<Integer, Page> pagesById = pageRepository.findAllById(window.stream()
+                        .map(InvertedIndex.Match::getPageId)
+                        .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Page::getId, page -> page));
 
-        for (Map.Entry<Page, Double> entry : pagesWithRelewanth.entrySet()) {
-            PagesToResponse pageToResponse = new PagesToResponse();
-            pageToResponse.setSite(entry.getKey().getSite().getUrl());
-            pageToResponse.setSitename(entry.getKey().getSite().getName());
-            pageToResponse.setUri(entry.getKey().getPath());
-            pageToResponse.setRelevance(entry.getValue());
-            pageToResponse.setTitle(createTitle(entry.getKey()));
-            pageToResponse.setSnippet(createSnippet(entry.getKey(), lemmas));
-
-            if (data.size() <= limit) {
-                data.add(pageToResponse);
+        List<PagesToResponse> data = new ArrayList<>();
+        for (InvertedIndex.Match match : window) {
+            Page page = pagesById.get(match.getPageId());
+            // the page was deleted after it was found
+            if (page == null) {
+                continue;
             }
-        }
-        if (offset != null && offset < data.size()) {
-            data = data.subList(offset, data.size());
+            PagesToResponse pageToResponse = new PagesToResponse();
+            pageToResponse.setSite(page.getSite().getUrl());
+            pageToResponse.setSitename(page.getSite().getName());
+            pageToResponse.setUri(page.getPath());
+            pageToResponse.setRelevance(maxRelevance > 0 ? match.getRelevance() / maxRelevance : 0);
+            pageToResponse.setTitle(createTitle(page));
+            pageToResponse.setSnippet(createSnippet(page, lemmas));
+            data.add(pageToResponse);
         }
         response.setData(data);
         return response;
     }
 
 
+    // the title and the text were extracted from the html at indexing
     private String createTitle(Page page) {
-        String content = page.getContent();
-        Document doc = Jsoup.parse(content);
-        String title = doc.title();
-        String cleanedTitle = Jsoup.parse(title).text();
-        return cleanedTitle;
+        return page.getTitle() == null ? "" : page.getTitle();
     }
 
 
-    private String createSnippet(Page page, ArrayList<Lemma> lemmas) {
-        List<String> lemmasList = lemmaRepository.findLemmasByLemmaIn(lemmas);
-        Document doc = Jsoup.parse(page.getContent());
-        String title = doc.title();
-        String body = doc.body().text();
-        String text = title + ".\n" + body;
+    private String createSnippet(Page page, ArrayList<String> lemmasList) {
+        String text = createTitle(page) + ".\n" + page.getText();
         String snippet = "";
 
         ArrayList<String> sentences = splitTextIntoSentences(text);
@@ -0,0 +1,47 @@
+package searchengine.services;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+// ids taken from a database sequence in blocks, the same way Hibernate does it (pooled-lo optimizer):
+// nextval gives the first id of a block of ALLOCATION_SIZE ids. Only the ids that are not used yet are kept in memory
+public class SequenceIds {
+
+    // has to be the same as allocationSize of the entities' sequence generators
+    public static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String sequence;
+    private long next;
+    private long end;
+
+    public SequenceIds(JdbcTemplate jdbcTemplate, String sequence) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequence = sequence;
+    }
+
+    // the missing blocks are taken with one query
+    public synchronized long[] allocate(int count) {
+        long[] ids = new long[count];
+        int filled = 0;
+        while (filled < count && next < end) {
+            ids[filled++] = next++;
+        }
+        if (filled == count) {
+            return ids;
+        }
+
+        int blocks = (count - filled + ALLOCATION_SIZE - 1) / ALLOCATION_SIZE;
+        List<Long> blockStarts = jdbcTemplate.queryForList(
+                "SELECT nextval('" + sequence + "') FROM generate_series(1, ?)", Long.class, blocks);
+        for (Long blockStart : blockStarts) {
+            next = blockStart;
+            end = blockStart + ALLOCATION_SIZE;
+            while (filled < count && next < end) {
+                ids[filled++] = next++;
+            }
+        }
+        return ids;
+    }
+}
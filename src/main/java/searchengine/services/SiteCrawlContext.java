@@ -0,0 +1,197 @@
+package searchengine.services;
+
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.model.Site;
+import searchengine.repositories.PageRepository;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// state of one site crawl, shared by all its urls in the pipeline.
+// The site is finished when the pending tasks counter drops to zero
+@Getter
+public class SiteCrawlContext {
+
+    private final Site site;
+    private final String host;
+    // the same key for all variants of a page url, for the seen urls, the frontier and the database
+    private final UrlCanonicalizer canonicalizer;
+
+    // urls claimed by any task of this site, to avoid repeated page parsing
+    private final UrlSeenSet seenUrls;
+    // urls (with their depth) that are submitted but not saved yet, this is what a checkpoint of the crawl keeps
+    private final Map<String, Integer> frontier = new ConcurrentHashMap<>();
+    // false for /api/indexPage: only the given page is indexed
+    private final boolean followLinks;
+    // pages from the previous indexing by their paths, empty if it is not incremental
+    @Setter
+    private Map<String, PageRepository.PageState> knownPages = Map.of();
+    // Disallow rules of the site, nothing is restricted until robots.txt is loaded
+    @Setter
+    private RobotsTxt robotsTxt = new RobotsTxt();
+    // fingerprints of the site's pages, detection is off for single page indexing
+    @Setter
+    private NearDuplicateIndex nearDuplicates = new NearDuplicateIndex(-1);
+    // links deeper than maxDepth are not followed, not more than maxPages urls are crawled. 0 - no limit
+    @Setter
+    private int maxDepth;
+    @Setter
+    private int maxPages;
+    private final AtomicInteger submittedPages = new AtomicInteger();
+
+    private final CrawlPipeline pipeline;
+    private final PolitenessScheduler scheduler;
+
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    // tasks released by the scheduler and not fetched yet, limited by the site's share of the fetch budget
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile boolean stopped;
+
+    public SiteCrawlContext(Site site,
+                            UrlSeenSet seenUrls,
+                            boolean followLinks,
+                            CrawlPipeline pipeline,
+                            PolitenessScheduler scheduler) {
+        this.site = site;
+        this.host = getHost(site.getUrl());
+        this.canonicalizer = new UrlCanonicalizer(site.getUrl());
+        this.seenUrls = seenUrls;
+        this.followLinks = followLinks;
+        this.pipeline = pipeline;
+        this.scheduler = scheduler;
+    }
+
+    // a new url found by the crawl (already canonical): it is submitted only if it is allowed by robots.txt,
+    // not seen yet and within the site's depth and pages limits
+    public boolean offer(String url, int depth) {
+        return offer(url, depth, 0);
+    }
+
+    // lastModified (epoch milliseconds, 0 if unknown) comes from the sitemap
+    public boolean offer(String url, int depth, long lastModified) {
+        if (url == null || (maxDepth > 0 && depth > maxDepth) || !isAllowed(url) || !seenUrls.claim(url)) {
+            return false;
+        }
+        if (!reservePage()) {
+            return false;
+        }
+        enqueue(url, depth, lastModified);
+        return true;
+    }
+
+    // submits the url without checking the limits (the home page, known pages, urls from a checkpoint)
+    public void submit(String url, int depth) {
+        submittedPages.incrementAndGet();
+        enqueue(url, depth, 0);
+    }
+
+    // the url goes to the fetch stage when the host delay has passed, urls with the lowest priority value go first
+    private void enqueue(String url, int depth, long lastModified) {
+        frontier.put(url, depth);
+        // after stop the url is only kept for the checkpoint
+        if (stopped) {
+            return;
+        }
+        pendingTasks.incrementAndGet();
+        PageRepository.PageState knownPage = knownPages.isEmpty()
+                ? null : knownPages.get(canonicalizer.toPath(url));
+        CrawlTask task = new CrawlTask(this, url, depth, knownPage);
+        scheduler.submit(host, this, getPriority(url, depth, lastModified, System.currentTimeMillis()), () -> pipeline.fetch(task));
+    }
+
+    private boolean reservePage() {
+        int submitted;
+        do {
+            submitted = submittedPages.get();
+            if (maxPages > 0 && submitted >= maxPages) {
+                return false;
+            }
+        } while (!submittedPages.compareAndSet(submitted, submitted + 1));
+        return true;
+    }
+
+    // shallow pages go first, and among them short urls without query parameters:
+    // deep paths, long queries and numbers (calendars, pagination) are usually the least valuable pages.
+    // Pages recently modified by the sitemap's lastmod go before the other pages of their depth
+    static int getPriority(String url, int depth, long lastModified, long now) {
+        int priority = depth * 100 + url.length() / 10 - getFreshness(lastModified, now);
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/') {
+                priority += 5;
+            } else if (c == '?' || c == '&') {
+                priority += 10;
+            } else if (Character.isDigit(c)) {
+                priority += 1;
+            }
+        }
+        return priority;
+    }
+
+    private static int getFreshness(long lastModified, long now) {
+        if (lastModified <= 0) {
+            return 0;
+        }
+        long age = now - lastModified;
+        if (age < TimeUnit.DAYS.toMillis(1)) {
+            return 50;
+        } else if (age < TimeUnit.DAYS.toMillis(7)) {
+            return 35;
+        } else if (age < TimeUnit.DAYS.toMillis(30)) {
+            return 20;
+        } else if (age < TimeUnit.DAYS.toMillis(365)) {
+            return 5;
+        }
+        return 0;
+    }
+
+    // urls disallowed by robots.txt are not submitted at all
+    public boolean isAllowed(String url) {
+        return robotsTxt.isAllowed(canonicalizer.toPath(url));
+    }
+
+    // tasks dropped after stop stay in the frontier, so the crawl can be resumed with them
+    public void taskFinished(CrawlTask task) {
+        if (!stopped) {
+            frontier.remove(task.getUrl());
+        }
+        release();
+    }
+
+    // keeps the site unfinished while urls are added from outside of the pipeline (from the sitemap)
+    public void hold() {
+        pendingTasks.incrementAndGet();
+    }
+
+    public void release() {
+        if (pendingTasks.decrementAndGet() <= 0) {
+            completion.complete(null);
+        }
+    }
+
+    public boolean isFinished() {
+        return completion.isDone();
+    }
+
+    // tasks that are already in the pipeline queues are dropped by the stages.
+    // Only the tasks of this crawl are cancelled, a reindex of the same site goes on
+    public void stop() {
+        stopped = true;
+        scheduler.cancel(host, this);
+        completion.complete(null);
+    }
+
+    private static String getHost(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (Exception e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package searchengine.services;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.Site;
+import searchengine.model.SiteGeneration;
+import searchengine.repositories.SiteRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Array;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// switches sites between generations. A full indexing writes into a new site row, searches use the current row
+// until the new one is finished and both are switched in one transaction. Retired rows are deleted by one
+// background thread in small chunks, every chunk in its own transaction, so searches and writers are not blocked for long
+@Component
+public class SiteGenerations {
+
+    // pages and lemmas deleted per transaction
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String RETIRE_OTHERS = "UPDATE site SET generation = 'RETIRED' " +
+            "WHERE url = ? AND id <> ? AND generation <> 'RETIRED'";
+    private static final String RETIRE_BUILDING = "UPDATE site SET generation = 'RETIRED' WHERE url = ? AND generation = 'BUILDING'";
+    private static final String MAKE_CURRENT = "UPDATE site SET generation = 'CURRENT' WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final SiteRepository siteRepository;
+    private final LemmaDictionary lemmaDictionary;
+    private final InvertedIndex invertedIndex;
+    private final ExecutorService collector = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "generation-collector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SiteGenerations(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           SiteRepository siteRepository,
+                           LemmaDictionary lemmaDictionary,
+                           InvertedIndex invertedIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.siteRepository = siteRepository;
+        this.lemmaDictionary = lemmaDictionary;
+        this.invertedIndex = invertedIndex;
+    }
+
+    // rows saved before there were generations are current. Generations retired before the restart are deleted now,
+    // the others are loaded into the in-memory index
+    @PostConstruct
+    public void start() {
+        jdbcTemplate.update("UPDATE site SET generation = 'CURRENT' WHERE generation IS NULL");
+        invertedIndex.start();
+        collect();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        collector.shutdownNow();
+    }
+
+    // a new generation of an unfinished indexing is not needed anymore when a new full indexing starts
+    public void retireBuilding(String url) {
+        jdbcTemplate.update(RETIRE_BUILDING, url);
+        collect();
+    }
+
+    // the finished generation becomes the searched one, the previous one is retired in the same transaction
+    public void activate(Site site) {
+        newTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.update(RETIRE_OTHERS, site.getUrl(), site.getId());
+            jdbcTemplate.update(MAKE_CURRENT, site.getId());
+        });
+        site.setGeneration(SiteGeneration.CURRENT);
+        invertedIndex.activate(site.getId(), site.getUrl());
+        collect();
+    }
+
+    public void collect() {
+        collector.execute(() -> {
+            for (Site site : siteRepository.findAllByGeneration(SiteGeneration.RETIRED)) {
+                invertedIndex.removeSite(site.getId());
+                try {
+                    deleteSite(site.getId());
+                } catch (Exception e) {
+                    // the site will be deleted with the next collection
+                    System.out.println("Не удалось удалить старые данные сайта " + site.getUrl() + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+
+    private void deleteSite(int siteId) {
+        while (true) {
+            List<Integer> pageIds = jdbcTemplate.queryForList("SELECT id FROM page WHERE site_id = ? LIMIT ?",
+                    Integer.class, siteId, CHUNK_SIZE);
+            if (pageIds.isEmpty()) {
+                break;
+            }
+            newTransaction.executeWithoutResult(status -> {
+                deleteByIds("DELETE FROM index WHERE page_id = ANY(?)", pageIds);
+                deleteByIds("DELETE FROM page_content WHERE page_id = ANY(?)", pageIds);
+                deleteByIds("DELETE FROM page WHERE id = ANY(?)", pageIds);
+            });
+        }
+
+        lemmaDictionary.removeSite(siteId);
+        while (jdbcTemplate.update("DELETE FROM lemma WHERE id IN (SELECT id FROM lemma WHERE site_id = ? LIMIT ?)",
+                siteId, CHUNK_SIZE) > 0) {
+            // every statement deletes the next chunk in its own transaction
+        }
+        jdbcTemplate.update("DELETE FROM site WHERE id = ?", siteId);
+    }
+
+    private void deleteByIds(String sql, List<Integer> ids) {
+        jdbcTemplate.update(sql, statement -> {
+            Array array = statement.getConnection().createArrayOf("integer", ids.toArray());
+            statement.setArray(1, array);
+        });
+    }
+}
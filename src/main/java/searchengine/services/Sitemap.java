@@ -0,0 +1,133 @@
+package searchengine.services;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+// urls from sitemap.xml files of the site. Sitemap indexes are followed,
+// the files are read with StAX, so even a big sitemap is not kept in memory as a document
+public class Sitemap {
+
+    private static final int MAX_SITEMAP_FILES = 100;
+    private static final int TIMEOUT = 10000;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Entry {
+        private final String url;
+        // epoch milliseconds, 0 if the sitemap has no lastmod for the url
+        private final long lastModified;
+    }
+
+    // passes not more than maxUrls urls to the consumer while the files are parsed, nothing is collected
+    public static void load(List<String> sitemapUrls, int maxUrls, BooleanSupplier cancelled, Consumer<Entry> consumer) {
+        int[] count = {0};
+        Deque<String> sitemapsToRead = new ArrayDeque<>(sitemapUrls);
+        Set<String> readSitemaps = new HashSet<>();
+
+        while (!sitemapsToRead.isEmpty() && readSitemaps.size() < MAX_SITEMAP_FILES
+                && count[0] < maxUrls && !cancelled.getAsBoolean()) {
+            String sitemapUrl = sitemapsToRead.poll();
+            if (!readSitemaps.add(sitemapUrl)) {
+                continue;
+            }
+            try {
+                Connection.Response response = Jsoup.connect(sitemapUrl)
+                        .userAgent(CrawlPipeline.USER_AGENT)
+                        .ignoreContentType(true)
+                        .maxBodySize(0)
+                        .timeout(TIMEOUT)
+                        .execute();
+                if (response.statusCode() >= 400) {
+                    continue;
+                }
+                try (InputStream body = sitemapUrl.endsWith(".gz")
+                        ? new GZIPInputStream(response.bodyStream()) : response.bodyStream()) {
+                    parse(body, sitemapsToRead::add, entry -> {
+                        if (count[0] < maxUrls && !cancelled.getAsBoolean()) {
+                            count[0]++;
+                            consumer.accept(entry);
+                        }
+                    });
+                }
+            } catch (IOException | XMLStreamException e) {
+                System.out.println("Не удалось прочитать карту сайта " + sitemapUrl + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // <sitemapindex> gives urls of other sitemaps, <urlset> gives urls of pages
+    public static void parse(InputStream content,
+                             Consumer<String> sitemapConsumer,
+                             Consumer<Entry> entryConsumer) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(content);
+        try {
+            String location = null;
+            long lastModified = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("url") || name.equals("sitemap")) {
+                        location = null;
+                        lastModified = 0;
+                    } else if (name.equals("loc")) {
+                        location = reader.getElementText().trim();
+                    } else if (name.equals("lastmod")) {
+                        lastModified = parseLastModified(reader.getElementText().trim());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && location != null && !location.isEmpty()) {
+                    if (reader.getLocalName().equals("url")) {
+                        entryConsumer.accept(new Entry(location, lastModified));
+                        location = null;
+                    } else if (reader.getLocalName().equals("sitemap")) {
+                        sitemapConsumer.accept(location);
+                        location = null;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    // W3C datetime: a full timestamp or just a date
+    private static long parseLastModified(String value) {
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            try {
+                return LocalDate.parse(value.substring(0, Math.min(10, value.length())))
+                        .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            } catch (Exception ignored) {
+                return 0;
+            }
+        }
+    }
+}
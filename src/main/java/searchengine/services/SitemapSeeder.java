@@ -0,0 +1,52 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SitesList;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// fills the frontier of the site with urls from its sitemaps, so the crawl doesn't have to
+// discover every page through links starting from the home page and gets its full share of fetches at once
+@Component
+public class SitemapSeeder {
+
+    private final int maxUrls;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sitemap-seeder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SitemapSeeder(SitesList settings) {
+        this.maxUrls = settings.getSitemapMaxUrls();
+    }
+
+    // sitemaps are loaded in the background, the site can't be finished until its sitemaps are read.
+    // Without Sitemap lines in robots.txt the default /sitemap.xml is tried
+    public void seed(SiteCrawlContext context) {
+        context.hold();
+        executor.execute(() -> {
+            try {
+                String siteUrl = context.getCanonicalizer().getRoot();
+                List<String> sitemapUrls = context.getRobotsTxt().getSitemaps().isEmpty()
+                        ? List.of(siteUrl + "/sitemap.xml") : context.getRobotsTxt().getSitemaps();
+
+                // every url is offered as soon as it is parsed, its lastmod raises the priority of recently changed pages
+                Sitemap.load(sitemapUrls, maxUrls, context::isStopped, entry -> context.offer(
+                        context.getCanonicalizer().canonicalize(entry.getUrl()), 1, entry.getLastModified()));
+            } catch (Exception e) {
+                System.out.println("Не удалось загрузить карту сайта " + context.getSite().getUrl() + ": " + e.getMessage());
+            } finally {
+                context.release();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -9,11 +9,13 @@ import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
 import searchengine.model.Site;
+import searchengine.model.SiteGeneration;
 import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 @Service
@@ -24,6 +26,9 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final PageRepository pageRepository;
     private final SiteRepository siteRepository;
     private final LemmaRepository lemmaRepository;
+    private final CrawlPipeline crawlPipeline;
+    private final LemmaService lemmaService;
+    private final SearchResultCache searchResultCache;
 
 
     @Override
@@ -32,8 +37,13 @@ public class StatisticsServiceImpl implements StatisticsService {
         total.setSites(sites.getSites().size());
         total.setIndexing(ApiController.isIndexing);
 
+        // a site being rebuilt is shown by its new generation, the older rows of the url are replaced by the newer ones
+        LinkedHashMap<String, Site> sitesByUrl = new LinkedHashMap<>();
+        for (Site site : siteRepository.findAllByGenerationNotOrderById(SiteGeneration.RETIRED)) {
+            sitesByUrl.put(site.getUrl(), site);
+        }
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
-        List<searchengine.model.Site> sitesList = siteRepository.findAll();
+        List<searchengine.model.Site> sitesList = new ArrayList<>(sitesByUrl.values());
         for(int i = 0; i < sitesList.size(); i++) {
             Site site = sitesList.get(i);
             DetailedStatisticsItem item = new DetailedStatisticsItem();
@@ -46,13 +56,16 @@ public class StatisticsServiceImpl implements StatisticsService {
             item.setStatusTime(site.getStatusTime().toEpochSecond(java.time.ZoneOffset.UTC) * 1000);
             detailed.add(item);
         }
-        total.setPages( (int) pageRepository.count());
-        total.setLemmas((int) lemmaRepository.count());
+        total.setPages( (int) pageRepository.countBySiteGeneration(SiteGeneration.CURRENT));
+        total.setLemmas((int) lemmaRepository.countBySiteGeneration(SiteGeneration.CURRENT));
 
         StatisticsResponse response = new StatisticsResponse();
         StatisticsData data = new StatisticsData();
         data.setTotal(total);
         data.setDetailed(detailed);
+        data.setPipeline(crawlPipeline.getStatistics());
+        data.setMorphology(lemmaService.getCacheStatistics());
+        data.setSearchCache(searchResultCache.getStatistics());
         response.setStatistics(data);
         response.setResult(true);
         return response;
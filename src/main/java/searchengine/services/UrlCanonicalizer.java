@@ -0,0 +1,232 @@
+package searchengine.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// turns urls of one site into a single key per page: the site's scheme, lowercase host, no fragment,
+// no trailing slash, no tracking parameters and sorted query parameters. Urls of other hosts and links to files give null.
+// It is created once per site and the usual url is already canonical, so it is only checked and returned as it is
+public class UrlCanonicalizer {
+
+    private static final String[] SKIPPED_EXTENSIONS = {
+            ".pdf", ".jpg", ".jpeg", ".png", ".bmp", ".gif", ".svg", ".webp", ".ico",
+            ".zip", ".rar", ".doc", ".docx", ".xls", ".xlsx", ".mp3", ".mp4", ".avi"
+    };
+    private static final String TRACKING_PREFIX = "utm_";
+    private static final String[] TRACKING_PARAMETERS = {"fbclid", "gclid", "yclid", "_openstat"};
+
+    // "https://host" without a trailing slash, the home page of the site
+    private final String root;
+    private final String host;
+    // the same site with or without "www."
+    private final String alternativeHost;
+
+    public UrlCanonicalizer(String siteUrl) {
+        String url = siteUrl.trim();
+        int schemeEnd = url.indexOf("://");
+        String scheme = schemeEnd < 0 ? "http" : url.substring(0, schemeEnd).toLowerCase(Locale.ROOT);
+        String rest = schemeEnd < 0 ? url : url.substring(schemeEnd + 3);
+        int hostEnd = rest.indexOf('/');
+        this.host = (hostEnd < 0 ? rest : rest.substring(0, hostEnd)).toLowerCase(Locale.ROOT);
+        this.alternativeHost = host.startsWith("www.") ? host.substring(4) : "www." + host;
+        this.root = scheme + "://" + host;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    // absolute or site-relative url -> canonical url, or null if it is not a page of this site
+    public String canonicalize(String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        String canonical = isCanonical(url) ? url : normalize(url.trim());
+        return canonical == null || hasSkippedExtension(canonical) ? null : canonical;
+    }
+
+    // the path that is stored in the database, "/" for the home page
+    public String toPath(String canonicalUrl) {
+        return canonicalUrl.length() <= root.length() ? "/" : canonicalUrl.substring(root.length());
+    }
+
+    public String toUrl(String path) {
+        return path.equals("/") ? root : root + path;
+    }
+
+
+    // the fast path: checks the url without creating any objects
+    private boolean isCanonical(String url) {
+        if (!url.startsWith(root)) {
+            return false;
+        }
+        int length = url.length();
+        int start = root.length();
+        if (start == length) {
+            return true;
+        }
+        // "https://host.other.com" or "https://host:8080" are not this site's urls
+        if (url.charAt(start) != '/' && url.charAt(start) != '?') {
+            return false;
+        }
+        if (url.indexOf('#', start) >= 0) {
+            return false;
+        }
+
+        int queryStart = url.indexOf('?', start);
+        int pathEnd = queryStart < 0 ? length : queryStart;
+        int pathLength = pathEnd - start;
+        if (queryStart >= 0 && pathLength == 0) {
+            return false;
+        }
+        // only the home page with a query keeps its slash: "https://host/?page=2"
+        if (url.charAt(pathEnd - 1) == '/' && !(queryStart >= 0 && pathLength == 1)) {
+            return false;
+        }
+        return queryStart < 0 || isCanonicalQuery(url, queryStart + 1);
+    }
+
+    // parameters are not empty, not tracking and sorted
+    private static boolean isCanonicalQuery(String url, int start) {
+        int length = url.length();
+        if (start >= length) {
+            return false;
+        }
+        int previousStart = -1;
+        int previousEnd = -1;
+        int parameterStart = start;
+        while (parameterStart <= length) {
+            int parameterEnd = url.indexOf('&', parameterStart);
+            if (parameterEnd < 0) {
+                parameterEnd = length;
+            }
+            if (parameterEnd == parameterStart || isTrackingParameter(url, parameterStart, parameterEnd)) {
+                return false;
+            }
+            if (previousStart >= 0 && compareRegions(url, previousStart, previousEnd, parameterStart, parameterEnd) > 0) {
+                return false;
+            }
+            previousStart = parameterStart;
+            previousEnd = parameterEnd;
+            parameterStart = parameterEnd + 1;
+        }
+        return true;
+    }
+
+    // the same order as String.compareTo
+    private static int compareRegions(String url, int start1, int end1, int start2, int end2) {
+        int length = Math.min(end1 - start1, end2 - start2);
+        for (int i = 0; i < length; i++) {
+            char c1 = url.charAt(start1 + i);
+            char c2 = url.charAt(start2 + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return (end1 - start1) - (end2 - start2);
+    }
+
+    private static boolean isTrackingParameter(String query, int start, int end) {
+        int nameEnd = query.indexOf('=', start);
+        if (nameEnd < 0 || nameEnd > end) {
+            nameEnd = end;
+        }
+        int nameLength = nameEnd - start;
+        if (nameLength >= TRACKING_PREFIX.length() && query.regionMatches(true, start, TRACKING_PREFIX, 0, TRACKING_PREFIX.length())) {
+            return true;
+        }
+        for (String parameter : TRACKING_PARAMETERS) {
+            if (nameLength == parameter.length() && query.regionMatches(true, start, parameter, 0, nameLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasSkippedExtension(String url) {
+        int queryStart = url.indexOf('?');
+        int pathEnd = queryStart < 0 ? url.length() : queryStart;
+        for (String extension : SKIPPED_EXTENSIONS) {
+            int start = pathEnd - extension.length();
+            if (start > 0 && url.regionMatches(true, start, extension, 0, extension.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the slow path for urls that are not canonical yet
+    private String normalize(String url) {
+        int fragment = url.indexOf('#');
+        if (fragment >= 0) {
+            url = url.substring(0, fragment);
+        }
+
+        String rest;
+        if (url.startsWith("//")) {
+            rest = url.substring(2);
+        } else if (url.startsWith("/")) {
+            rest = host + url;
+        } else {
+            // http and https urls of the site are the same pages
+            int schemeEnd = url.indexOf("://");
+            if (schemeEnd < 0) {
+                return null;
+            }
+            String scheme = url.substring(0, schemeEnd).toLowerCase(Locale.ROOT);
+            if (!scheme.equals("http") && !scheme.equals("https")) {
+                return null;
+            }
+            rest = url.substring(schemeEnd + 3);
+        }
+
+        int authorityEnd = 0;
+        while (authorityEnd < rest.length() && rest.charAt(authorityEnd) != '/' && rest.charAt(authorityEnd) != '?') {
+            authorityEnd++;
+        }
+        String authority = rest.substring(0, authorityEnd).toLowerCase(Locale.ROOT);
+        int userInfoEnd = authority.lastIndexOf('@');
+        if (userInfoEnd >= 0) {
+            authority = authority.substring(userInfoEnd + 1);
+        }
+        if (authority.endsWith(":80") || authority.endsWith(":443")) {
+            authority = authority.substring(0, authority.lastIndexOf(':'));
+        }
+        if (!authority.equals(host) && !authority.equals(alternativeHost)) {
+            return null;
+        }
+
+        int queryStart = rest.indexOf('?', authorityEnd);
+        String path = rest.substring(authorityEnd, queryStart < 0 ? rest.length() : queryStart);
+        int pathEnd = path.length();
+        while (pathEnd > 0 && path.charAt(pathEnd - 1) == '/') {
+            pathEnd--;
+        }
+        path = path.substring(0, pathEnd);
+
+        String query = queryStart < 0 ? "" : normalizeQuery(rest.substring(queryStart + 1));
+        if (query.isEmpty()) {
+            return root + path;
+        }
+        return root + (path.isEmpty() ? "/" : path) + "?" + query;
+    }
+
+    private static String normalizeQuery(String query) {
+        List<String> parameters = new ArrayList<>();
+        int parameterStart = 0;
+        while (parameterStart <= query.length()) {
+            int parameterEnd = query.indexOf('&', parameterStart);
+            if (parameterEnd < 0) {
+                parameterEnd = query.length();
+            }
+            if (parameterEnd > parameterStart && !isTrackingParameter(query, parameterStart, parameterEnd)) {
+                parameters.add(query.substring(parameterStart, parameterEnd));
+            }
+            parameterStart = parameterEnd + 1;
+        }
+        Collections.sort(parameters);
+        return String.join("&", parameters);
+    }
+}
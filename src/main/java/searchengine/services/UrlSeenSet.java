@@ -0,0 +1,155 @@
+package searchengine.services;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// concurrent set of urls that were already claimed by the crawler.
+// The first exactLimit urls are stored exactly in a concurrent hash set,
+// after that (if the limit is set) new urls go to a Bloom filter, so memory stays bounded
+public class UrlSeenSet {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int LOCK_STRIPES = 64;
+
+    private final Set<String> exactUrls = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger exactSize = new AtomicInteger();
+    private final AtomicInteger bloomSize = new AtomicInteger();
+    private final int exactLimit;
+    private final BloomFilter bloomFilter;
+    private final Object[] bloomLocks;
+
+    // without limit all urls are stored exactly
+    public UrlSeenSet() {
+        this(0, 0);
+    }
+
+    public UrlSeenSet(int exactLimit, int bloomCapacity) {
+        this.exactLimit = exactLimit;
+        if (exactLimit > 0) {
+            bloomFilter = new BloomFilter(Math.max(bloomCapacity, exactLimit), FALSE_POSITIVE_RATE);
+            bloomLocks = new Object[LOCK_STRIPES];
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                bloomLocks[i] = new Object();
+            }
+        } else {
+            bloomFilter = null;
+            bloomLocks = null;
+        }
+    }
+
+    // atomically marks the url as seen. Returns true only for the one thread that claimed it first
+    public boolean claim(String url) {
+        if (exactUrls.contains(url)) {
+            return false;
+        }
+        if (bloomFilter == null) {
+            return addExact(url);
+        }
+        return claimWithLimit(url);
+    }
+
+    public boolean contains(String url) {
+        if (exactUrls.contains(url)) {
+            return true;
+        }
+        return bloomFilter != null && bloomFilter.mightContain(hash(url));
+    }
+
+    public int size() {
+        return exactSize.get() + bloomSize.get();
+    }
+
+    private boolean addExact(String url) {
+        if (exactUrls.add(url)) {
+            exactSize.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    // the Bloom filter can't do "put if absent" by itself, so urls with the same hash are claimed under one lock.
+    // The choice between the exact set and the filter is made under the same lock: otherwise a url being added
+    // to the exact set by one thread could be put into the filter by another one when the limit is reached
+    private boolean claimWithLimit(String url) {
+        long hash = hash(url);
+        synchronized (bloomLocks[(int) (hash >>> 58)]) {
+            if (exactUrls.contains(url)) {
+                return false;
+            }
+            if (reserveExactSlot()) {
+                exactUrls.add(url);
+                return true;
+            }
+            if (bloomFilter.mightContain(hash)) {
+                return false;
+            }
+            bloomFilter.put(hash);
+        }
+        bloomSize.incrementAndGet();
+        return true;
+    }
+
+    private boolean reserveExactSlot() {
+        int size = exactSize.get();
+        while (size < exactLimit) {
+            if (exactSize.compareAndSet(size, size + 1)) {
+                return true;
+            }
+            size = exactSize.get();
+        }
+        return false;
+    }
+
+    // 64-bit FNV-1a, String.hashCode() is too weak for the double hashing in the filter
+    private static long hash(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+
+    private static class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitsCount;
+        private final int hashFunctions;
+
+        BloomFilter(int expectedInsertions, double falsePositiveRate) {
+            long size = (long) (-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.max(1, (size + 63) / 64);
+            bits = new AtomicLongArray(words);
+            bitsCount = (long) words * 64;
+            hashFunctions = Math.max(1, (int) Math.round((double) bitsCount / expectedInsertions * Math.log(2)));
+        }
+
+        void put(long hash) {
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashFunctions; i++) {
+                long bit = ((hash1 + (long) i * hash2) & Long.MAX_VALUE) % bitsCount;
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current = bits.get(word);
+                while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    current = bits.get(word);
+                }
+            }
+        }
+
+        boolean mightContain(long hash) {
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashFunctions; i++) {
+                long bit = ((hash1 + (long) i * hash2) & Long.MAX_VALUE) % bitsCount;
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package searchengine.services;
+
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+
+// counts Cyrillic and Latin words of a text in one pass over its chars. A word is lowercased right in the buffer
+// and counted in an open addressing table of primitive arrays, so a String is created only once for every distinct word.
+// Words are the same as "\b([а-яА-Я]+|[a-zA-Z]+)\b" finds: runs of letters, digits and '_' that have only Cyrillic
+// or only Latin letters. The script of a word tells which morphology it goes to.
+// The position of a word is the number of the run in the text, other runs are counted too, so neighbours stay neighbours
+public class WordCounter {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // chars of all distinct words one after another
+    private char[] chars = new char[4096];
+    private int charsUsed;
+
+    // slot -> word number + 1 (0 - empty slot)
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // position -> word number, -1 for runs that are not words
+    private int[] tokens = new int[1024];
+    private int tokenCount;
+
+    public static WordCounter count(String text) {
+        WordCounter counter = new WordCounter();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (!isWordChar(c)) {
+                i++;
+                continue;
+            }
+
+            // the whole run is read, it is a word only if all its chars are letters of the script of the first one
+            int start = counter.charsUsed;
+            boolean cyrillic = isCyrillic(c);
+            boolean word = cyrillic || isLatin(c);
+            int hash = 0;
+            while (i < length && isWordChar(c = text.charAt(i))) {
+                if (word) {
+                    if (cyrillic ? isCyrillic(c) : isLatin(c)) {
+                        c = toLowerCase(c);
+                        counter.append(c);
+                        hash = 31 * hash + c;
+                    } else {
+                        word = false;
+                    }
+                }
+                i++;
+            }
+            if (word) {
+                counter.addToken(counter.add(start, counter.charsUsed - start, hash));
+            } else {
+                counter.charsUsed = start;
+                counter.addToken(-1);
+            }
+        }
+        return counter;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // every distinct word with its count
+    public void forEach(ObjIntConsumer<String> consumer) {
+        for (int word = 0; word < size; word++) {
+            consumer.accept(new String(chars, starts[word], lengths[word]), counts[word]);
+        }
+    }
+
+    // every distinct word with its positions in ascending order
+    public void forEachWithPositions(BiConsumer<String, int[]> consumer) {
+        int[][] positions = new int[size][];
+        for (int word = 0; word < size; word++) {
+            positions[word] = new int[counts[word]];
+        }
+        int[] filled = new int[size];
+        for (int position = 0; position < tokenCount; position++) {
+            int word = tokens[position];
+            if (word >= 0) {
+                positions[word][filled[word]++] = position;
+            }
+        }
+        for (int word = 0; word < size; word++) {
+            consumer.accept(new String(chars, starts[word], lengths[word]), positions[word]);
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    static boolean isCyrillic(char c) {
+        return (c >= 'а' && c <= 'я') || (c >= 'А' && c <= 'Я');
+    }
+
+    static boolean isLatin(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    // only for the letters of the two scripts above
+    private static char toLowerCase(char c) {
+        if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c;
+    }
+
+    private void append(char c) {
+        if (charsUsed == chars.length) {
+            char[] newChars = new char[chars.length * 2];
+            System.arraycopy(chars, 0, newChars, 0, charsUsed);
+            chars = newChars;
+        }
+        chars[charsUsed++] = c;
+    }
+
+    private void addToken(int word) {
+        if (tokenCount == tokens.length) {
+            tokens = copy(tokens, tokens.length * 2);
+        }
+        tokens[tokenCount++] = word;
+    }
+
+    // the word is at the end of the chars buffer: it stays there if it is new and is dropped if it is already counted.
+    // Returns the number of the word
+    private int add(int start, int length, int hash) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        while (table[slot] != 0) {
+            int word = table[slot] - 1;
+            if (hashes[word] == hash && lengths[word] == length && sameChars(starts[word], start, length)) {
+                counts[word]++;
+                charsUsed = start;
+                return word;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == starts.length) {
+            grow();
+            return add(start, length, hash);
+        }
+        starts[size] = start;
+        lengths[size] = length;
+        hashes[size] = hash;
+        counts[size] = 1;
+        table[slot] = ++size;
+        return size - 1;
+    }
+
+    private boolean sameChars(int start1, int start2, int length) {
+        for (int i = 0; i < length; i++) {
+            if (chars[start1 + i] != chars[start2 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the table is kept at most half full
+    private void grow() {
+        int capacity = starts.length * 2;
+        starts = copy(starts, capacity);
+        lengths = copy(lengths, capacity);
+        hashes = copy(hashes, capacity);
+        counts = copy(counts, capacity);
+        table = new int[capacity * 2];
+        int mask = table.length - 1;
+        for (int word = 0; word < size; word++) {
+            int slot = mix(hashes[word]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = word + 1;
+        }
+    }
+
+    private static int[] copy(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
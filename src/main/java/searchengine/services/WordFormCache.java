@@ -0,0 +1,109 @@
+package searchengine.services;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import searchengine.dto.statistics.MorphologyStatistics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// bounded cache of the morphology results: word form -> normal form and part of speech.
+// It is split into segments with their own locks, every segment is an LRU map,
+// so the parse threads rarely wait for each other. The most frequent words are almost never looked up twice
+public class WordFormCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Function<String, WordForm> loader;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public WordFormCache(int capacity, Function<String, WordForm> loader) {
+        this.loader = loader;
+        int segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    // the morphology is called outside of the lock: two threads may look the same word up, but nobody waits for it
+    public WordForm get(String word) {
+        Segment segment = getSegment(word);
+        WordForm wordForm;
+        synchronized (segment) {
+            wordForm = segment.get(word);
+        }
+        if (wordForm != null) {
+            hits.increment();
+            return wordForm;
+        }
+        misses.increment();
+        wordForm = loader.apply(word);
+        synchronized (segment) {
+            segment.put(word, wordForm);
+        }
+        return wordForm;
+    }
+
+    public MorphologyStatistics getStatistics() {
+        MorphologyStatistics statistics = new MorphologyStatistics();
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        statistics.setCacheSize(size);
+        statistics.setHits(hitCount);
+        statistics.setMisses(missCount);
+        statistics.setEvictions(evictions.sum());
+        statistics.setHitRate(hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount));
+        return statistics;
+    }
+
+    private Segment getSegment(String word) {
+        int hash = word.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash & 0x7fffffff) % SEGMENTS];
+    }
+
+
+    // normalForm is null if the morphology doesn't know the word.
+    // Function words (interjections, prepositions, conjunctions and particles) are not indexed
+    @Getter
+    @RequiredArgsConstructor
+    public static class WordForm {
+        private final String normalForm;
+        private final boolean functionWord;
+
+        public boolean isIndexed() {
+            return normalForm != null && !functionWord;
+        }
+    }
+
+    private class Segment extends LinkedHashMap<String, WordForm> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, WordForm> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
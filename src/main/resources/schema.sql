@@ -0,0 +1,5 @@
+-- runs before Hibernate updates the schema. The html of the pages has moved to page_content:
+-- ddl-auto=update never drops the old NOT NULL content column, and can't add the NOT NULL text column
+-- to a table that already has rows
+ALTER TABLE IF EXISTS page DROP COLUMN IF EXISTS content;
+ALTER TABLE IF EXISTS page ADD COLUMN IF NOT EXISTS text TEXT NOT NULL DEFAULT '';
@@ -0,0 +1,99 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import searchengine.config.SitesList;
+import searchengine.model.Site;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+// the stages are not started, so the released tasks stay in the fetch queue and in flight
+class CrawlPipelineTest {
+
+    private static final String SITE_URL = "https://example.com";
+
+    private final PolitenessScheduler scheduler = new PolitenessScheduler();
+    private final CrawlPipeline pipeline;
+    private final Site site = new Site();
+
+    CrawlPipelineTest() {
+        SitesList settings = new SitesList();
+        settings.setFetchConcurrency(4);
+        pipeline = new CrawlPipeline(mock(PageIndexer.class), mock(LemmaService.class), scheduler,
+                mock(PlatformTransactionManager.class), settings);
+        site.setUrl(SITE_URL);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    // a finished reindex of a page doesn't take the crawl's gate away: the crawl still gets only its share of fetches
+    @Test
+    void reindexDuringCrawlKeepsCrawlGate() throws InterruptedException {
+        scheduler.setDelay("example.com", 0);
+        SiteCrawlContext crawl = newContext(true);
+        pipeline.register(crawl);
+        for (int i = 0; i < 20; i++) {
+            crawl.submit(SITE_URL + "/page" + i, 1);
+        }
+        assertTrue(waitFor(() -> crawl.getInFlight().get() == 4));
+
+        SiteCrawlContext reindex = newContext(false);
+        pipeline.register(reindex);
+        reindex.submit(SITE_URL + "/page0", 0);
+        assertTrue(waitFor(() -> reindex.getInFlight().get() == 1));
+        // the page is done
+        reindex.release();
+        assertTrue(reindex.isFinished());
+
+        assertTrue(waitFor(() -> crawl.getInFlight().get() == 4));
+        Thread.sleep(200);
+        assertEquals(4, crawl.getInFlight().get());
+        assertEquals(16, scheduler.getQueueSize());
+    }
+
+    // stopping the crawl drops only its own tasks, the page waiting for reindex is still fetched
+    @Test
+    void stoppedCrawlKeepsReindexTasks() throws InterruptedException {
+        scheduler.setDelay("example.com", 300);
+        SiteCrawlContext crawl = newContext(true);
+        pipeline.register(crawl);
+        for (int i = 0; i < 5; i++) {
+            crawl.submit(SITE_URL + "/" + i, 0);
+        }
+        assertTrue(waitFor(() -> crawl.getInFlight().get() == 1));
+
+        SiteCrawlContext reindex = newContext(false);
+        pipeline.register(reindex);
+        reindex.submit(SITE_URL + "/news/2024/03/some-long-article?page=1", 0);
+        crawl.stop();
+
+        assertTrue(waitFor(() -> reindex.getInFlight().get() == 1));
+        assertFalse(reindex.isFinished());
+        assertEquals(1, crawl.getInFlight().get());
+        assertEquals(0, scheduler.getQueueSize());
+    }
+
+    private SiteCrawlContext newContext(boolean followLinks) {
+        return new SiteCrawlContext(site, new UrlSeenSet(), followLinks, pipeline, scheduler);
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
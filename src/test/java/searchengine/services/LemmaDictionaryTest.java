@@ -0,0 +1,97 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.config.SitesList;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// the database is a mock that inserts every new lemma
+class LemmaDictionaryTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final LemmaDictionary dictionary;
+
+    LemmaDictionaryTest() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), anyInt())).thenAnswer(invocation -> {
+            int blocks = invocation.getArgument(2);
+            return LongStream.range(0, blocks).map(block -> 1 + block * SequenceIds.ALLOCATION_SIZE).boxed().toList();
+        });
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    Collection<?> rows = invocation.getArgument(1);
+                    int[] counts = new int[rows.size()];
+                    Arrays.fill(counts, 1);
+                    return new int[][]{counts};
+                });
+        dictionary = new LemmaDictionary(jdbcTemplate, mock(PlatformTransactionManager.class), new SitesList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void newLemmasGetIdsInAlphabeticalOrder() {
+        assertEquals(Map.of("бег", 1, "дом", 2, "лес", 3), dictionary.getIds(1, List.of("лес", "бег", "дом")));
+        // the ids are kept, nothing is inserted again
+        assertEquals(Map.of("дом", 2, "лес", 3), dictionary.getIds(1, List.of("дом", "лес")));
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    void idsAreKeptOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        dictionary.getIds(1, List.of("дом"));
+        dictionary.getIds(1, List.of("дом"));
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        dictionary.getIds(1, List.of("дом"));
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    // the lemma rows of a rolled back transaction are gone, so their ids must not be used by other writers
+    @Test
+    void idsAreForgottenAfterRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+        dictionary.getIds(1, List.of("дом"));
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        dictionary.getIds(1, List.of("дом"));
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    void sitesHaveTheirOwnLemmas() {
+        dictionary.getIds(1, List.of("дом"));
+        dictionary.getIds(2, List.of("дом"));
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+}
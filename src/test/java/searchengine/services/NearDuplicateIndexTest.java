@@ -0,0 +1,99 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NearDuplicateIndexTest {
+
+    private static final String TEXT = "Компания продаёт и обслуживает сельскохозяйственную технику: тракторы, комбайны, "
+            + "сеялки и опрыскиватели. Доставка по всей области, гарантия на все модели, сервисный центр работает "
+            + "без выходных, запчасти всегда в наличии на складе";
+
+    @Test
+    void sameTextIsDuplicate() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        long simHash = NearDuplicateIndex.simHash(TEXT);
+        assertNotEquals(0, simHash);
+        assertNull(index.findOrAdd("/a", simHash));
+        assertEquals("/a", index.findOrAdd("/print/a", simHash));
+        // the copy itself is not an original
+        assertEquals("/a", index.findOrAdd("/b", simHash));
+    }
+
+    @Test
+    void caseAndPunctuationDoNotMatter() {
+        assertEquals(NearDuplicateIndex.simHash(TEXT), NearDuplicateIndex.simHash(TEXT.toUpperCase().replace(",", " ;")));
+    }
+
+    @Test
+    void pageIsNotDuplicateOfItself() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        long simHash = NearDuplicateIndex.simHash(TEXT);
+        index.add("/a", simHash);
+        assertNull(index.findOrAdd("/a", simHash));
+    }
+
+    @Test
+    void findDoesNotAdd() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        long simHash = NearDuplicateIndex.simHash(TEXT);
+        assertNull(index.find("/a", simHash));
+        assertNull(index.find("/b", simHash));
+        index.add("/a", simHash);
+        assertEquals("/a", index.find("/b", simHash));
+    }
+
+    @Test
+    void shortTextsHaveNoFingerprint() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        assertEquals(0, NearDuplicateIndex.simHash("Главная Контакты О компании"));
+        assertNull(index.findOrAdd("/a", 0));
+        assertNull(index.findOrAdd("/b", 0));
+    }
+
+    @Test
+    void disabledWithNegativeDistance() {
+        NearDuplicateIndex index = new NearDuplicateIndex(-1);
+        assertFalse(index.isEnabled());
+        long simHash = NearDuplicateIndex.simHash(TEXT);
+        assertNull(index.findOrAdd("/a", simHash));
+        assertNull(index.findOrAdd("/b", simHash));
+    }
+
+    // hashes that differ in up to maxDistance bits anywhere share a band and are found, farther ones are not
+    @Test
+    void distanceAcrossBands() {
+        Random random = new Random(1);
+        for (int maxDistance = 0; maxDistance <= 6; maxDistance++) {
+            for (int round = 0; round < 300; round++) {
+                NearDuplicateIndex index = new NearDuplicateIndex(maxDistance);
+                long simHash = random.nextLong() | 1;
+                index.add("/original", simHash);
+
+                long near = flipBits(random, simHash, random.nextInt(maxDistance + 1));
+                long far = flipBits(random, simHash, maxDistance + 1 + random.nextInt(3));
+                if (near != 0) {
+                    assertEquals("/original", index.find("/near", near));
+                }
+                if (far != 0) {
+                    assertNull(index.find("/far", far));
+                }
+            }
+        }
+    }
+
+
+    private static long flipBits(Random random, long hash, int count) {
+        long mask = 0;
+        while (Long.bitCount(mask) < count) {
+            mask |= 1L << random.nextInt(64);
+        }
+        return hash ^ mask;
+    }
+}
@@ -0,0 +1,49 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageContentCodecTest {
+
+    @Test
+    void emptyHtml() {
+        assertEquals("", PageContentCodec.decompress(PageContentCodec.compress("")));
+    }
+
+    @Test
+    void nonAsciiHtml() {
+        String html = "<html><head><meta charset=\"utf-8\"><title>Поиск по сайту — ёжики</title></head>"
+                + "<body><p>Съешь же ещё этих мягких французских булок, да выпей чаю.</p>"
+                + "<p>Ελληνικά, 中文, emoji 🚀 и символы &nbsp;©®</p></body></html>";
+        assertEquals(html, PageContentCodec.decompress(PageContentCodec.compress(html)));
+    }
+
+    @Test
+    void largeHtml() {
+        // bigger than the buffers of the codec, with letters that take two and three bytes
+        Random random = new Random(5);
+        String letters = "abcабвгдеёжз€—\n<>";
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            html.append(letters.charAt(random.nextInt(letters.length())));
+        }
+        String text = html.toString();
+        byte[] compressed = PageContentCodec.compress(text);
+        assertTrue(compressed.length < text.length());
+        assertEquals(text, PageContentCodec.decompress(compressed));
+    }
+
+    @Test
+    void damagedContent() {
+        byte[] compressed = PageContentCodec.compress("<html><body>страница</body></html>");
+        byte[] truncated = new byte[compressed.length / 2];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        assertThrows(IllegalStateException.class, () -> PageContentCodec.decompress(truncated));
+        assertThrows(IllegalStateException.class, () -> PageContentCodec.decompress(new byte[]{1, 2, 3, 4}));
+    }
+}
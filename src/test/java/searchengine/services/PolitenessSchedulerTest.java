@@ -0,0 +1,156 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PolitenessSchedulerTest {
+
+    private final PolitenessScheduler scheduler = new PolitenessScheduler();
+    private final Object crawl = new Object();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void tasksOfHostGoByPriority() throws InterruptedException {
+        List<Integer> released = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        scheduler.setDelay("a.ru", 50);
+        for (int priority : new int[]{3, 1, 2}) {
+            scheduler.submit("a.ru", crawl, priority, () -> {
+                released.add(priority);
+                done.countDown();
+                return true;
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // the first task may be released before the others are submitted
+        assertTrue(released.equals(List.of(1, 2, 3)) || released.equals(List.of(3, 1, 2)), released.toString());
+    }
+
+    @Test
+    void hostDelayIsKept() throws InterruptedException {
+        List<Long> times = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        scheduler.setDelay("a.ru", 100);
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit("a.ru", crawl, 0, () -> {
+                times.add(System.nanoTime());
+                done.countDown();
+                return true;
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < times.size(); i++) {
+            assertTrue(times.get(i) - times.get(i - 1) >= TimeUnit.MILLISECONDS.toNanos(90));
+        }
+    }
+
+    // a host whose tasks can't be taken (the fetch queue is full) doesn't stop the other hosts
+    @Test
+    void refusedTaskIsRetriedWithoutBlockingOtherHosts() throws InterruptedException {
+        scheduler.setDelay("a.ru", 0);
+        scheduler.setDelay("b.ru", 0);
+        AtomicBoolean accepting = new AtomicBoolean();
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch aTaken = new CountDownLatch(1);
+        scheduler.submit("a.ru", crawl, 0, () -> {
+            attempts.incrementAndGet();
+            if (!accepting.get()) {
+                return false;
+            }
+            aTaken.countDown();
+            return true;
+        });
+
+        CountDownLatch bTaken = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit("b.ru", crawl, 0, () -> {
+                bTaken.countDown();
+                return true;
+            });
+        }
+        assertTrue(bTaken.await(5, TimeUnit.SECONDS));
+        assertEquals(1, aTaken.getCount());
+        assertEquals(1, scheduler.getQueueSize());
+
+        accepting.set(true);
+        assertTrue(aTaken.await(5, TimeUnit.SECONDS));
+        assertTrue(attempts.get() > 1);
+        assertEquals(0, scheduler.getQueueSize());
+    }
+
+    @Test
+    void cancelDropsWaitingTasks() throws InterruptedException {
+        CountDownLatch first = new CountDownLatch(1);
+        AtomicInteger released = new AtomicInteger();
+        scheduler.setDelay("a.ru", 10_000);
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit("a.ru", crawl, 0, () -> {
+                released.incrementAndGet();
+                first.countDown();
+                return true;
+            });
+        }
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.cancel("a.ru", crawl));
+        assertEquals(0, scheduler.getQueueSize());
+        assertEquals(1, released.get());
+    }
+
+    @Test
+    void closedGateHoldsOnlyItsCrawl() throws InterruptedException {
+        Object reindex = new Object();
+        scheduler.setDelay("a.ru", 0);
+        scheduler.setGate("a.ru", crawl, () -> false);
+        AtomicInteger crawlReleased = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit("a.ru", crawl, 0, () -> {
+                crawlReleased.incrementAndGet();
+                return true;
+            });
+        }
+        CountDownLatch reindexReleased = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit("a.ru", reindex, 10, () -> {
+                reindexReleased.countDown();
+                return true;
+            });
+        }
+        assertTrue(reindexReleased.await(5, TimeUnit.SECONDS));
+        assertEquals(0, crawlReleased.get());
+        assertEquals(3, scheduler.getQueueSize());
+    }
+
+    @Test
+    void cancelKeepsOtherCrawlsOfHost() throws InterruptedException {
+        Object reindex = new Object();
+        scheduler.setDelay("a.ru", 10_000);
+        CountDownLatch first = new CountDownLatch(1);
+        scheduler.submit("a.ru", crawl, 0, () -> {
+            first.countDown();
+            return true;
+        });
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        scheduler.submit("a.ru", crawl, 0, () -> true);
+        scheduler.submit("a.ru", reindex, 0, () -> true);
+
+        assertEquals(1, scheduler.cancel("a.ru", crawl));
+        assertEquals(1, scheduler.getQueueSize());
+        assertEquals(1, scheduler.cancel("a.ru", reindex));
+        assertEquals(0, scheduler.cancel("a.ru", reindex));
+        assertEquals(0, scheduler.getQueueSize());
+    }
+}
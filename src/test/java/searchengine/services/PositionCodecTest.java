@@ -0,0 +1,65 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PositionCodecTest {
+
+    @Test
+    void emptyPositions() {
+        byte[] encoded = PositionCodec.encode(new int[0]);
+        assertArrayEquals(new byte[]{0}, encoded);
+        assertArrayEquals(new int[0], PositionCodec.decode(encoded));
+        assertArrayEquals(new int[0], PositionCodec.decode(new byte[0]));
+        assertArrayEquals(new int[0], PositionCodec.decode(null));
+    }
+
+    @Test
+    void singlePosition() {
+        assertRoundTrip(0);
+        assertRoundTrip(5);
+        assertArrayEquals(new byte[]{1, 5}, PositionCodec.encode(new int[]{5}));
+    }
+
+    @Test
+    void multiByteVarints() {
+        // the last values of one, two, three and four bytes and the first ones after them
+        assertEquals(2, PositionCodec.encode(new int[]{127}).length);
+        assertEquals(3, PositionCodec.encode(new int[]{128}).length);
+        assertEquals(3, PositionCodec.encode(new int[]{16383}).length);
+        assertEquals(4, PositionCodec.encode(new int[]{16384}).length);
+        assertEquals(5, PositionCodec.encode(new int[]{(1 << 28) - 1}).length);
+        assertEquals(6, PositionCodec.encode(new int[]{1 << 28}).length);
+        assertRoundTrip(127, 128, 16383, 16384, 2097151, 2097152, (1 << 28) - 1, 1 << 28);
+    }
+
+    @Test
+    void largeGaps() {
+        assertRoundTrip(0, Integer.MAX_VALUE);
+        assertRoundTrip(1, 2, 3, 1_000_000, 1_000_001, Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+    }
+
+    @Test
+    void randomPositions() {
+        Random random = new Random(11);
+        for (int round = 0; round < 1000; round++) {
+            int[] positions = new int[random.nextInt(200)];
+            int position = 0;
+            for (int i = 0; i < positions.length; i++) {
+                int bits = random.nextInt(4) * 7 + 1;
+                position += random.nextInt(1 << bits);
+                positions[i] = position;
+            }
+            assertRoundTrip(positions);
+        }
+    }
+
+
+    private static void assertRoundTrip(int... positions) {
+        assertArrayEquals(positions, PositionCodec.decode(PositionCodec.encode(positions)));
+    }
+}
@@ -0,0 +1,271 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// every list is compared with a TreeMap that gets the same changes
+class PostingListTest {
+
+    private static final int BLOCK = PostingList.BLOCK_SIZE;
+
+    @Test
+    void emptyList() {
+        PostingList list = new PostingList();
+        assertEquals(0, list.size());
+        assertFalse(list.cursor().next());
+        assertFalse(list.cursor().advance(0));
+        list.remove(5);
+        assertEquals(0, list.size());
+
+        PostingList other = listOf(1, 2, 3);
+        assertEquals(List.of(), intersect(list, other));
+        assertEquals(List.of(), intersect(other, list));
+        assertEquals(List.of(), union(new PostingList(), new PostingList()));
+        assertEquals(List.of("1:[0, 1]", "2:[0, 1]", "3:[0, 1]"), union(list, other));
+        assertEquals(List.of(), intersect());
+    }
+
+    @Test
+    void appendsAcrossBlockBoundaries() {
+        for (int size : new int[]{1, BLOCK - 1, BLOCK, BLOCK + 1, 2 * BLOCK - 1, 2 * BLOCK, 2 * BLOCK + 1, 5 * BLOCK + 3}) {
+            PostingList list = new PostingList();
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            for (int i = 0; i < size; i++) {
+                list.put(i * 3 + 1, i % 7 + 1);
+                expected.put(i * 3 + 1, i % 7 + 1);
+            }
+            assertSame(expected, list);
+        }
+    }
+
+    @Test
+    void insertsIntoFullBlockUntilItIsSplit() {
+        PostingList list = new PostingList();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        // two sealed blocks of even pages and a few pages in the tail
+        for (int i = 0; i < 2 * BLOCK + 5; i++) {
+            list.put(i * 2, 1);
+            expected.put(i * 2, 1);
+        }
+        // the first block grows up to 2 * BLOCK - 1 postings and is split on the next one
+        for (int i = 0; i < BLOCK; i++) {
+            list.put(i * 2 + 1, 2);
+            expected.put(i * 2 + 1, 2);
+            assertSame(expected, list);
+        }
+        // and shrinks back until it is dropped
+        for (int i = 0; i < 2 * BLOCK; i++) {
+            list.remove(i);
+            expected.remove(i);
+            assertSame(expected, list);
+        }
+    }
+
+    @Test
+    void replacesFrequencies() {
+        PostingList list = new PostingList();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 3 * BLOCK; i++) {
+            list.put(i, 1);
+            expected.put(i, 1);
+        }
+        for (int page : new int[]{0, BLOCK - 1, BLOCK, 2 * BLOCK - 1, 3 * BLOCK - 1}) {
+            list.put(page, 9);
+            expected.put(page, 9);
+        }
+        assertSame(expected, list);
+        assertEquals(9, list.getMaxFrequency());
+    }
+
+    @Test
+    void randomChanges() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            PostingList list = new PostingList();
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            randomFill(random, list, expected, random.nextInt(10) + 5, 2000);
+            assertSame(expected, list);
+        }
+    }
+
+    @Test
+    void randomAdvances() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            PostingList list = new PostingList();
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            randomFill(random, list, expected, random.nextInt(5000) + 10, 3000);
+
+            PostingList.Cursor cursor = list.cursor();
+            int target = 0;
+            while (true) {
+                target += random.nextInt(100);
+                Integer page = expected.ceilingKey(target);
+                if (page == null) {
+                    assertFalse(cursor.advance(target));
+                    break;
+                }
+                assertTrue(cursor.advance(target));
+                assertEquals(page, cursor.page());
+                assertEquals(expected.get(page), cursor.frequency());
+                target = page;
+            }
+        }
+    }
+
+    @Test
+    void randomIntersectionsAndUnions() {
+        Random random = new Random(3);
+        for (int round = 0; round < 300; round++) {
+            int count = random.nextInt(4) + 1;
+            int range = random.nextInt(5000) + 10;
+            PostingList[] lists = new PostingList[count];
+            List<TreeMap<Integer, Integer>> expected = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                lists[i] = new PostingList();
+                expected.add(new TreeMap<>());
+                randomFill(random, lists[i], expected.get(i), range, random.nextBoolean() ? 50 : 3000);
+            }
+
+            TreeSet<Integer> pages = new TreeSet<>();
+            expected.forEach(map -> pages.addAll(map.keySet()));
+            List<String> expectedIntersection = new ArrayList<>();
+            List<String> expectedUnion = new ArrayList<>();
+            for (int page : pages) {
+                int[] frequencies = new int[count];
+                boolean inAll = true;
+                for (int i = 0; i < count; i++) {
+                    Integer frequency = expected.get(i).get(page);
+                    inAll &= frequency != null;
+                    frequencies[i] = frequency == null ? 0 : frequency;
+                }
+                String posting = page + ":" + Arrays.toString(frequencies);
+                expectedUnion.add(posting);
+                if (inAll) {
+                    expectedIntersection.add(posting);
+                }
+            }
+            assertEquals(expectedIntersection, intersect(lists));
+            assertEquals(expectedUnion, union(lists));
+        }
+    }
+
+    // the pruned search finds the same best scores as scoring the whole intersection (whole numbers, so the sums are exact)
+    @Test
+    void maxScoreFindsBestPagesOfIntersection() {
+        Random random = new Random(11);
+        for (int round = 0; round < 300; round++) {
+            int count = random.nextInt(4) + 1;
+            int range = random.nextInt(3000) + 10;
+            PostingList[] lists = new PostingList[count];
+            double[] weights = new double[count];
+            double[] bounds = new double[count];
+            for (int i = 0; i < count; i++) {
+                lists[i] = new PostingList();
+                randomFill(random, lists[i], new TreeMap<>(), range, random.nextBoolean() ? 100 : 2000);
+                weights[i] = random.nextInt(5) + 1;
+                bounds[i] = weights[i] * lists[i].getMaxFrequency();
+            }
+            PostingList.Scorer scorer = (list, page, frequency) -> weights[list] * frequency;
+            int size = random.nextInt(20) + 1;
+
+            List<double[]> all = new ArrayList<>();
+            PostingList.intersect(lists, (page, frequencies) -> {
+                double score = 0;
+                for (int i = 0; i < count; i++) {
+                    score += scorer.score(i, page, frequencies[i]);
+                }
+                all.add(new double[]{page, score});
+            });
+            all.sort((a, b) -> a[1] != b[1] ? Double.compare(b[1], a[1]) : Double.compare(a[0], b[0]));
+            List<Double> expected = all.stream().limit(size).map(match -> match[1]).toList();
+
+            TreeMap<Double, Integer> top = new TreeMap<>();
+            int[] kept = {0};
+            PostingList.maxScore(lists, bounds, scorer, new PostingList.Collector() {
+                @Override
+                public double getThreshold() {
+                    return kept[0] < size ? Double.NEGATIVE_INFINITY : top.firstKey();
+                }
+
+                @Override
+                public void collect(int page, double score) {
+                    top.merge(score, 1, Integer::sum);
+                    if (++kept[0] > size) {
+                        kept[0]--;
+                        top.compute(top.firstKey(), (key, pages) -> pages == 1 ? null : pages - 1);
+                    }
+                }
+            });
+            List<Double> found = new ArrayList<>();
+            top.descendingMap().forEach((score, pages) -> {
+                for (int i = 0; i < pages; i++) {
+                    found.add(score);
+                }
+            });
+            assertEquals(expected, found);
+        }
+    }
+
+    // puts, appends and removals in a random order
+    private static void randomFill(Random random, PostingList list, TreeMap<Integer, Integer> expected, int range, int changes) {
+        for (int i = 0; i < changes; i++) {
+            int page = random.nextInt(range);
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                int frequency = random.nextInt(50) + 1;
+                list.put(page, frequency);
+                expected.put(page, frequency);
+            } else if (kind < 8) {
+                int next = (expected.isEmpty() ? 0 : expected.lastKey()) + random.nextInt(3) + 1;
+                list.put(next, 1);
+                expected.put(next, 1);
+            } else {
+                list.remove(page);
+                expected.remove(page);
+            }
+        }
+    }
+
+    private static void assertSame(TreeMap<Integer, Integer> expected, PostingList list) {
+        assertEquals(expected.size(), list.size());
+        PostingList.Cursor cursor = list.cursor();
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertTrue(cursor.next());
+            assertEquals(entry.getKey(), cursor.page());
+            assertEquals(entry.getValue(), cursor.frequency());
+        }
+        assertFalse(cursor.next());
+    }
+
+    private static PostingList listOf(int... pages) {
+        PostingList list = new PostingList();
+        for (int page : pages) {
+            list.put(page, 1);
+        }
+        return list;
+    }
+
+    private static List<String> intersect(PostingList... lists) {
+        List<String> postings = new ArrayList<>();
+        PostingList.intersect(lists, (page, frequencies) -> postings.add(page + ":" + Arrays.toString(frequencies)));
+        return postings;
+    }
+
+    private static List<String> union(PostingList... lists) {
+        List<String> postings = new ArrayList<>();
+        PostingList.union(lists, (page, frequencies) -> postings.add(page + ":" + Arrays.toString(frequencies)));
+        return postings;
+    }
+}
@@ -0,0 +1,112 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RobotsTxtTest {
+
+    @Test
+    void emptyFileAllowsEverything() throws IOException {
+        RobotsTxt robotsTxt = RobotsTxt.parse("");
+        assertTrue(robotsTxt.isAllowed("/"));
+        assertTrue(robotsTxt.isAllowed("/admin"));
+        assertEquals(0, robotsTxt.getCrawlDelayMillis());
+        assertEquals(List.of(), robotsTxt.getSitemaps());
+    }
+
+    @Test
+    void onlyTheStarGroupApplies() throws IOException {
+        RobotsTxt robotsTxt = RobotsTxt.parse(String.join("\n",
+                "User-agent: Googlebot",
+                "Disallow: /google",
+                "",
+                "User-agent: Yandex",
+                "User-agent: *",
+                "Disallow: /admin # comment",
+                "Crawl-delay: 1.5",
+                "",
+                "User-agent: Bingbot",
+                "Disallow: /bing"));
+        assertTrue(robotsTxt.isAllowed("/google"));
+        assertTrue(robotsTxt.isAllowed("/bing"));
+        assertFalse(robotsTxt.isAllowed("/admin"));
+        assertFalse(robotsTxt.isAllowed("/admin/users"));
+        assertEquals(1500, robotsTxt.getCrawlDelayMillis());
+    }
+
+    @Test
+    void emptyDisallowAllowsEverything() throws IOException {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nDisallow:\n");
+        assertTrue(robotsTxt.isAllowed("/anything"));
+    }
+
+    @Test
+    void longestMatchWins() throws IOException {
+        RobotsTxt robotsTxt = RobotsTxt.parse(String.join("\n",
+                "User-agent: *",
+                "Disallow: /shop",
+                "Allow: /shop/catalog",
+                "Disallow: /shop/catalog/private"));
+        assertTrue(robotsTxt.isAllowed("/"));
+        assertFalse(robotsTxt.isAllowed("/shop"));
+        assertFalse(robotsTxt.isAllowed("/shop/cart"));
+        assertTrue(robotsTxt.isAllowed("/shop/catalog"));
+        assertTrue(robotsTxt.isAllowed("/shop/catalog/phones"));
+        assertFalse(robotsTxt.isAllowed("/shop/catalog/private/1"));
+    }
+
+    @Test
+    void allowWinsRulesOfTheSameLength() throws IOException {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nDisallow: /page\nAllow: /page\n");
+        assertTrue(robotsTxt.isAllowed("/page"));
+    }
+
+    @Test
+    void wildcards() throws IOException {
+        RobotsTxt robotsTxt = RobotsTxt.parse(String.join("\n",
+                "User-agent: *",
+                "Disallow: /*?sort=",
+                "Disallow: /*.php$",
+                "Disallow: /print$",
+                "Disallow: /tmp/*/cache"));
+        assertFalse(robotsTxt.isAllowed("/catalog?sort=price"));
+        assertTrue(robotsTxt.isAllowed("/catalog?page=2"));
+
+        assertFalse(robotsTxt.isAllowed("/index.php"));
+        assertFalse(robotsTxt.isAllowed("/a/b.php"));
+        assertTrue(robotsTxt.isAllowed("/index.php?id=1"));
+        assertTrue(robotsTxt.isAllowed("/index.phpx"));
+
+        assertFalse(robotsTxt.isAllowed("/print"));
+        assertTrue(robotsTxt.isAllowed("/print/1"));
+
+        assertFalse(robotsTxt.isAllowed("/tmp/a/cache"));
+        assertFalse(robotsTxt.isAllowed("/tmp/a/b/cache/1"));
+        assertTrue(robotsTxt.isAllowed("/tmp/cache"));
+    }
+
+    @Test
+    void longerWildcardAllowWins() throws IOException {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nDisallow: /*.html\nAllow: /news/*.html$\n");
+        assertFalse(robotsTxt.isAllowed("/about.html"));
+        assertTrue(robotsTxt.isAllowed("/news/today.html"));
+        assertFalse(robotsTxt.isAllowed("/news/today.html?print=1"));
+    }
+
+    @Test
+    void sitemapsOutsideOfGroups() throws IOException {
+        RobotsTxt robotsTxt = RobotsTxt.parse(String.join("\n",
+                "Sitemap: https://example.com/sitemap.xml",
+                "User-agent: Googlebot",
+                "Disallow: /",
+                "Sitemap: https://example.com/news.xml.gz"));
+        assertEquals(List.of("https://example.com/sitemap.xml", "https://example.com/news.xml.gz"), robotsTxt.getSitemaps());
+        assertTrue(robotsTxt.isAllowed("/"));
+    }
+}
@@ -0,0 +1,190 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.config.SitesList;
+import searchengine.dto.statistics.PagesToResponse;
+import searchengine.dto.statistics.SearchCacheStatistics;
+import searchengine.dto.statistics.SearchResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SearchResultCacheTest {
+
+    private static final List<String> LEMMAS = List.of("дом", "мама");
+
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicInteger searches = new AtomicInteger();
+    private SearchResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        InvertedIndex invertedIndex = mock(InvertedIndex.class);
+        when(invertedIndex.getVersion()).thenAnswer(invocation -> version.get());
+        SitesList settings = new SitesList();
+        settings.setSearchCacheMegabytes(1);
+        cache = new SearchResultCache(settings, invertedIndex);
+    }
+
+    @Test
+    void sameSearchIsFoundOnce() {
+        SearchResponse first = cache.get(LEMMAS, null, 0, 20, () -> search(3, 10));
+        SearchResponse second = cache.get(LEMMAS, null, 0, 20, () -> search(3, 10));
+        assertEquals(1, searches.get());
+        assertEquals(first, second);
+        // every caller gets its own response
+        assertNotSame(first, second);
+
+        SearchCacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(1, statistics.getEntries());
+        assertEquals(0.5, statistics.getHitRate());
+    }
+
+    @Test
+    void siteAndWindowArePartOfTheKey() {
+        cache.get(LEMMAS, null, 0, 20, () -> search(1, 10));
+        cache.get(LEMMAS, "https://example.com", 0, 20, () -> search(1, 10));
+        cache.get(LEMMAS, null, 20, 20, () -> search(1, 10));
+        cache.get(LEMMAS, null, 0, 10, () -> search(1, 10));
+        cache.get(List.of("дом"), null, 0, 20, () -> search(1, 10));
+        assertEquals(5, searches.get());
+        assertEquals(5, cache.getStatistics().getEntries());
+    }
+
+    @Test
+    void newVersionDropsOlderResponses() {
+        cache.get(LEMMAS, null, 0, 20, () -> search(1, 10));
+        cache.get(List.of("дом"), null, 0, 20, () -> search(1, 10));
+        version.incrementAndGet();
+        cache.get(LEMMAS, null, 0, 20, () -> search(2, 10));
+        assertEquals(3, searches.get());
+
+        SearchCacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getEntries());
+        assertEquals(2, statistics.getInvalidations());
+    }
+
+    @Test
+    void responseFoundWhileIndexChangedIsNotSaved() {
+        cache.get(LEMMAS, null, 0, 20, () -> {
+            version.incrementAndGet();
+            return search(1, 10);
+        });
+        cache.get(LEMMAS, null, 0, 20, () -> search(1, 10));
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    void leastRecentlyUsedResponsesAreEvicted() {
+        // about 200 KB per response, five of them fit into a megabyte
+        for (int i = 0; i < 5; i++) {
+            String lemma = "слово" + i;
+            cache.get(List.of(lemma), null, 0, 20, () -> search(1, 100_000));
+        }
+        assertEquals(0, cache.getStatistics().getEvictions());
+        cache.get(List.of("слово0"), null, 0, 20, () -> search(1, 100_000));
+        cache.get(List.of("слово5"), null, 0, 20, () -> search(1, 100_000));
+
+        SearchCacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getEvictions());
+        assertTrue(statistics.getSizeBytes() <= statistics.getCapacityBytes());
+        // "слово1" was used longest ago
+        int before = searches.get();
+        cache.get(List.of("слово0"), null, 0, 20, () -> search(1, 100_000));
+        assertEquals(before, searches.get());
+        cache.get(List.of("слово1"), null, 0, 20, () -> search(1, 100_000));
+        assertEquals(before + 1, searches.get());
+    }
+
+    @Test
+    void responseBiggerThanCacheIsNotSaved() {
+        cache.get(LEMMAS, null, 0, 20, () -> search(1, 600_000));
+        assertEquals(0, cache.getStatistics().getEntries());
+    }
+
+    @Test
+    void identicalSearchesAtTheSameTimeRunOnce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SearchResponse>> responses = new ArrayList<>();
+            responses.add(executor.submit(() -> cache.get(LEMMAS, null, 0, 20, () -> {
+                started.countDown();
+                await(release);
+                return search(2, 10);
+            })));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                responses.add(executor.submit(() -> cache.get(LEMMAS, null, 0, 20, () -> search(2, 10))));
+            }
+            // the other callers have missed the cache and wait for the running search
+            while (cache.getStatistics().getMisses() < 4) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Future<SearchResponse> response : responses) {
+                assertEquals(2, response.get(10, TimeUnit.SECONDS).getCount());
+            }
+            assertEquals(1, searches.get());
+            assertEquals(3, cache.getStatistics().getSharedSearches());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedSearchIsNotSaved() {
+        assertThrows(IllegalStateException.class, () -> cache.get(LEMMAS, null, 0, 20, () -> {
+            throw new IllegalStateException("Индекс не загружен");
+        }));
+        SearchResponse response = cache.get(LEMMAS, null, 0, 20, () -> search(1, 10));
+        assertSame(Boolean.TRUE, response.getResult());
+        assertEquals(0, cache.getStatistics().getHits());
+    }
+
+
+    // a response with the given number of pages, every page with a snippet of the given length
+    private SearchResponse search(int pages, int snippetLength) {
+        searches.incrementAndGet();
+        SearchResponse response = new SearchResponse();
+        response.setResult(true);
+        response.setCount(pages);
+        List<PagesToResponse> data = new ArrayList<>();
+        for (int i = 0; i < pages; i++) {
+            PagesToResponse page = new PagesToResponse();
+            page.setUri("/page" + i);
+            page.setSnippet("а".repeat(snippetLength));
+            data.add(page);
+        }
+        response.setData(data);
+        return response;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
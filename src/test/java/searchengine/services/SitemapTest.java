@@ -0,0 +1,68 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SitemapTest {
+
+    @Test
+    void readsUrlsWithLastModified() throws Exception {
+        List<String> sitemaps = new ArrayList<>();
+        List<Sitemap.Entry> entries = new ArrayList<>();
+        parse("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                + "<url><loc> https://example.com/a </loc><lastmod>2024-03-01</lastmod></url>"
+                + "<url><loc>https://example.com/b</loc><lastmod>2024-03-02T10:00:00+00:00</lastmod></url>"
+                + "<url><loc>https://example.com/c</loc><lastmod>yesterday</lastmod></url>"
+                + "<url><lastmod>2024-03-01</lastmod></url>"
+                + "</urlset>", sitemaps, entries);
+
+        assertEquals(List.of(), sitemaps);
+        assertEquals(3, entries.size());
+        assertEquals("https://example.com/a", entries.get(0).getUrl());
+        assertEquals(LocalDate.of(2024, 3, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli(),
+                entries.get(0).getLastModified());
+        assertEquals(LocalDate.of(2024, 3, 2).atTime(10, 0).toInstant(ZoneOffset.UTC).toEpochMilli(),
+                entries.get(1).getLastModified());
+        assertEquals(0, entries.get(2).getLastModified());
+    }
+
+    @Test
+    void readsSitemapIndex() throws Exception {
+        List<String> sitemaps = new ArrayList<>();
+        List<Sitemap.Entry> entries = new ArrayList<>();
+        parse("<sitemapindex>"
+                + "<sitemap><loc>https://example.com/pages.xml</loc></sitemap>"
+                + "<sitemap><loc>https://example.com/news.xml.gz</loc><lastmod>2024-03-01</lastmod></sitemap>"
+                + "</sitemapindex>", sitemaps, entries);
+
+        assertEquals(List.of("https://example.com/pages.xml", "https://example.com/news.xml.gz"), sitemaps);
+        assertEquals(List.of(), entries);
+    }
+
+    // recently modified pages go before the other pages of the same depth, but not before shallower ones
+    @Test
+    void lastModifiedRaisesPriority() {
+        long now = System.currentTimeMillis();
+        String url = "https://example.com/news/item";
+        int unknown = SiteCrawlContext.getPriority(url, 1, 0, now);
+        int lastYear = SiteCrawlContext.getPriority(url, 1, now - 200L * 24 * 3600 * 1000, now);
+        int today = SiteCrawlContext.getPriority(url, 1, now - 3600 * 1000, now);
+        assertTrue(today < lastYear);
+        assertTrue(lastYear < unknown);
+        assertTrue(SiteCrawlContext.getPriority("https://example.com/", 0, 0, now) < today);
+    }
+
+    private static void parse(String xml, List<String> sitemaps, List<Sitemap.Entry> entries) throws Exception {
+        Sitemap.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), sitemaps::add, entries::add);
+    }
+}
@@ -0,0 +1,104 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class UrlCanonicalizerTest {
+
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer("https://Example.com/");
+
+    @Test
+    void root() {
+        assertEquals("https://example.com", canonicalizer.getRoot());
+        assertEquals("https://example.com", canonicalizer.canonicalize("https://example.com/"));
+        assertEquals("https://example.com", canonicalizer.canonicalize("/"));
+        assertEquals("/", canonicalizer.toPath("https://example.com"));
+        assertEquals("https://example.com", canonicalizer.toUrl("/"));
+    }
+
+    // a canonical url is returned as it is, without a copy
+    @Test
+    void canonicalUrlIsReturnedAsItIs() {
+        String[] urls = {
+                "https://example.com",
+                "https://example.com/news",
+                "https://example.com/news/1",
+                "https://example.com/catalog?page=2",
+                "https://example.com/catalog?a=1&b=2",
+                "https://example.com/?page=2"
+        };
+        for (String url : urls) {
+            String copy = new String(url);
+            assertSame(copy, canonicalizer.canonicalize(copy));
+        }
+    }
+
+    @Test
+    void relativeAndSchemeRelativeUrls() {
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("/news/"));
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("//example.com/news"));
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("  /news  "));
+    }
+
+    @Test
+    void hostSchemeAndPort() {
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("http://example.com/news"));
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("HTTPS://EXAMPLE.COM/news"));
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("https://www.example.com/news"));
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("https://example.com:443/news"));
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("https://user@example.com/news"));
+        // the path keeps its case
+        assertEquals("https://example.com/News", canonicalizer.canonicalize("https://example.com/News"));
+    }
+
+    @Test
+    void fragmentsAndTrailingSlashes() {
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("https://example.com/news#top"));
+        assertEquals("https://example.com/news", canonicalizer.canonicalize("https://example.com/news//"));
+        assertEquals("https://example.com", canonicalizer.canonicalize("https://example.com/#top"));
+        assertEquals("https://example.com/?page=2", canonicalizer.canonicalize("https://example.com?page=2"));
+    }
+
+    @Test
+    void queryParameters() {
+        assertEquals("https://example.com/catalog?a=1&b=2", canonicalizer.canonicalize("https://example.com/catalog?b=2&a=1"));
+        assertEquals("https://example.com/catalog?a=1", canonicalizer.canonicalize("https://example.com/catalog?a=1&&"));
+        assertEquals("https://example.com/catalog?a=1",
+                canonicalizer.canonicalize("https://example.com/catalog?utm_source=x&a=1&UTM_medium=y&fbclid=z"));
+        assertEquals("https://example.com/catalog", canonicalizer.canonicalize("https://example.com/catalog?gclid=1"));
+        assertEquals("https://example.com/catalog", canonicalizer.canonicalize("https://example.com/catalog/?"));
+        // a parameter that only starts like a tracking one is kept
+        assertEquals("https://example.com/catalog?utm=1", canonicalizer.canonicalize("https://example.com/catalog?utm=1"));
+    }
+
+    @Test
+    void otherSitesAndSchemes() {
+        assertNull(canonicalizer.canonicalize(null));
+        assertNull(canonicalizer.canonicalize(""));
+        assertNull(canonicalizer.canonicalize("https://other.com/news"));
+        assertNull(canonicalizer.canonicalize("https://example.com.other.com/news"));
+        assertNull(canonicalizer.canonicalize("https://example.com:8080/news"));
+        assertNull(canonicalizer.canonicalize("mailto:info@example.com"));
+        assertNull(canonicalizer.canonicalize("javascript:void(0)"));
+        assertNull(canonicalizer.canonicalize("ftp://example.com/file"));
+        assertNull(canonicalizer.canonicalize("news"));
+    }
+
+    @Test
+    void files() {
+        assertNull(canonicalizer.canonicalize("https://example.com/files/price.pdf"));
+        assertNull(canonicalizer.canonicalize("/images/logo.PNG"));
+        assertNull(canonicalizer.canonicalize("https://example.com/photo.jpg?size=2"));
+        assertEquals("https://example.com/pdf", canonicalizer.canonicalize("https://example.com/pdf"));
+    }
+
+    @Test
+    void paths() {
+        assertEquals("/news/1", canonicalizer.toPath("https://example.com/news/1"));
+        assertEquals("/?page=2", canonicalizer.toPath("https://example.com/?page=2"));
+        assertEquals("https://example.com/news/1", canonicalizer.toUrl("/news/1"));
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlSeenSetTest {
+
+    @Test
+    void claimsOnceWithoutLimit() {
+        UrlSeenSet seen = new UrlSeenSet();
+        assertTrue(seen.claim("/a"));
+        assertFalse(seen.claim("/a"));
+        assertTrue(seen.contains("/a"));
+        assertFalse(seen.contains("/b"));
+        assertEquals(1, seen.size());
+    }
+
+    @Test
+    void claimsOnceAfterLimit() {
+        UrlSeenSet seen = new UrlSeenSet(2, 100);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(seen.claim("/page" + i));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertFalse(seen.claim("/page" + i));
+            assertTrue(seen.contains("/page" + i));
+        }
+        assertEquals(10, seen.size());
+    }
+
+    // the threads claim the same urls while the exact set is being filled up to its limit
+    @Test
+    void concurrentClaimsAtLimit() throws InterruptedException {
+        int urls = 2000;
+        int threads = 8;
+        for (int round = 0; round < 20; round++) {
+            UrlSeenSet seen = new UrlSeenSet(urls / 2, urls * 4);
+            AtomicIntegerArray claims = new AtomicIntegerArray(urls);
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < urls; i++) {
+                        if (seen.claim("/page" + i)) {
+                            claims.incrementAndGet(i);
+                        }
+                    }
+                });
+                workers[t].start();
+            }
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            int claimed = 0;
+            for (int i = 0; i < urls; i++) {
+                // a false positive of the filter may leave a url unclaimed, but nobody claims it twice
+                assertTrue(claims.get(i) <= 1, "/page" + i);
+                claimed += claims.get(i);
+            }
+            assertEquals(claimed, seen.size());
+        }
+    }
+}
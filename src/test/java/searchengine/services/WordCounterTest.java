@@ -0,0 +1,82 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WordCounterTest {
+
+    @Test
+    void emptyText() {
+        assertEquals(Map.of(), counts(""));
+        assertEquals(Map.of(), counts(" ,.!? "));
+    }
+
+    @Test
+    void wordsAreLowercasedAndCounted() {
+        assertEquals(Map.of("мама", 2, "мыла", 1, "раму", 3),
+                counts("Мама мыла раму, РАМУ раму! МАМА"));
+    }
+
+    @Test
+    void runsWithDigitsOrOtherLettersAreNotWords() {
+        assertEquals(Map.of("дом", 1), counts("дом дом2 2дом дом_1 domдом домdom"));
+    }
+
+    @Test
+    void manyDistinctWords() {
+        // more words than the initial table and chars buffer hold
+        StringBuilder text = new StringBuilder();
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            String word = toLetters(i);
+            text.append(word).append(' ').append(word.toUpperCase()).append(' ');
+            expected.put(word, 2);
+        }
+        assertEquals(expected, counts(text.toString()));
+    }
+
+    // compared with splitting the text into runs of letters, digits and '_'
+    @Test
+    void randomTexts() {
+        Random random = new Random(9);
+        String alphabet = "абвгдАБВГД   ,.-_19";
+        for (int round = 0; round < 2000; round++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(200);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            Map<String, Integer> expected = new HashMap<>();
+            for (String run : text.toString().split("[^\\p{L}\\p{Nd}_]+")) {
+                if (!run.isEmpty() && run.matches("[а-яА-Я]+")) {
+                    expected.merge(run.toLowerCase(), 1, Integer::sum);
+                }
+            }
+            assertEquals(expected, counts(text.toString()), text.toString());
+        }
+    }
+
+
+    private static Map<String, Integer> counts(String text) {
+        WordCounter counter = WordCounter.count(text);
+        Map<String, Integer> counts = new HashMap<>();
+        counter.forEach(counts::put);
+        assertEquals(counts.size(), counter.size());
+        return counts;
+    }
+
+    // 0 -> "а", 1 -> "б", ... over the first 32 Cyrillic letters
+    private static String toLetters(int number) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append((char) ('а' + number % 32));
+            number /= 32;
+        } while (number > 0);
+        return word.toString();
+    }
+}